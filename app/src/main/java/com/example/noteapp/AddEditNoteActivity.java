@@ -1,7 +1,9 @@
 package com.example.noteapp;
 
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.Menu;
@@ -14,16 +16,15 @@ import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.example.noteapp.adapter.ListItemAdapter;
-import com.example.noteapp.database.AppDatabase;
+import com.example.noteapp.database.ListItemChanges;
+import com.example.noteapp.database.NoteRepository;
 import com.example.noteapp.model.ListItem;
 import com.example.noteapp.model.Note;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Future;
 
 public class AddEditNoteActivity extends AppCompatActivity implements ListItemAdapter.OnItemChangeListener {
     private EditText titleEditText, contentEditText;
@@ -32,10 +33,38 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
     private ListItemAdapter listAdapter;
 
     private Note currentNote;
-    private AppDatabase database;
+    private NoteRepository repository;
+    private Future<?> pendingLoad;
     private boolean isListNote;
     private boolean isEditMode;
     private List<ListItem> listItems;
+    // Item edits since the last save, only these rows are written on save
+    private final ListItemChanges itemChanges = new ListItemChanges();
+    // Whether the text of a text note changed since the last save, if not only the title,
+    // favorite flag and date are written
+    private boolean isContentEdited = false;
+    private Future<?> pendingItemsLoad;
+
+    // Autosave: edits are written once typing pauses, but never later than the max delay
+    // after the first unsaved edit
+    private static final long AUTOSAVE_DEBOUNCE_MS = 300;
+    private static final long AUTOSAVE_MAX_DELAY_MS = 1000;
+    private final Handler autosaveHandler = new Handler(Looper.getMainLooper());
+    private final Runnable autosaveRunnable = this::autosave;
+    private boolean hasUnsavedChanges = false;
+    private long firstUnsavedEditTime = 0;
+    // Set while a write runs. A write asked for meanwhile waits for it, so it starts from the
+    // ids the running one hands out instead of inserting the note or its new items again.
+    private boolean isWriting = false;
+    private String queuedTitle;
+    private final List<NoteRepository.Callback<Boolean>> queuedCallbacks = new ArrayList<>();
+    // True while the loaded note is put into the views, those changes are not edits
+    private boolean isApplyingLoadedNote = false;
+    // Large content is put into the editor in chunks, one per frame, so opening a huge note
+    // shows its start at once instead of blocking until all of it is laid out
+    private static final int LOAD_CHUNK_CHARS = 16 * 1024;
+    private final Handler contentLoadHandler = new Handler(Looper.getMainLooper());
+    private Runnable contentLoader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -43,8 +72,9 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
         setContentView(R.layout.activity_add_edit_note);
 
         initViews();
-        setupData();
+        // Before the data, cached items are put into the list adapter at once
         setupListRecyclerView();
+        setupData();
     }
 
     private void initViews() {
@@ -57,7 +87,7 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
         listRecyclerView = findViewById(R.id.listRecyclerView);
         addItemFab = findViewById(R.id.addItemFab);
 
-        database = AppDatabase.getInstance(this);
+        repository = NoteRepository.getInstance(this);
         listItems = new ArrayList<>();
 
         addItemFab.setOnClickListener(v -> addNewListItem());
@@ -69,7 +99,23 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
 
         if (noteId != -1) {
             isEditMode = true;
-            new LoadNoteTask().execute(noteId);
+            // A note opened or saved recently is shown in the first frame, for a list note
+            // together with its items
+            Note cached = repository.getCachedNote(noteId);
+            if (cached != null) {
+                onNoteLoaded(cached);
+            } else {
+                pendingLoad = repository.getNoteById(noteId, this::onNoteLoaded, this::onLoadFailed);
+            }
+            List<ListItem> cachedItems = isListNote ? repository.getCachedListItems(noteId) : null;
+            if (cachedItems != null) {
+                onListItemsLoaded(cachedItems);
+            } else if (isListNote) {
+                // Items added before the stored ones arrive would be dropped by onListItemsLoaded
+                addItemFab.setEnabled(false);
+                pendingItemsLoad = repository.getListItems(noteId, this::onListItemsLoaded,
+                        this::onLoadFailed);
+            }
         } else {
             isEditMode = false;
             currentNote = new Note("", "", isListNote);
@@ -96,9 +142,8 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                if (currentNote != null) {
-                    currentNote.setTitle(s.toString());
-                }
+                // Read from the view when the note is written
+                if (currentNote != null) onNoteEdited();
             }
 
             @Override
@@ -112,8 +157,11 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
 
                 @Override
                 public void onTextChanged(CharSequence s, int start, int before, int count) {
-                    if (currentNote != null) {
-                        currentNote.setContent(s.toString());
+                    // The editable is the document, it is only copied into a string when the note
+                    // is written, so a keystroke costs the same in a huge note as in a short one
+                    if (currentNote != null && !isApplyingLoadedNote) {
+                        isContentEdited = true;
+                        onNoteEdited();
                     }
                 }
 
@@ -128,34 +176,150 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
         listAdapter.setOnItemChangeListener(this);
         listRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         listRecyclerView.setAdapter(listAdapter);
+        listAdapter.createItemTouchHelper().attachToRecyclerView(listRecyclerView);
     }
 
     private void addNewListItem() {
-        listItems.add(new ListItem("", false));
+        ListItem item = new ListItem("", false);
+        item.setPosition(listItems.isEmpty() ? 0 : listItems.get(listItems.size() - 1).getPosition() + 1);
+        listItems.add(item);
+        itemChanges.itemAdded(item);
         listAdapter.notifyItemInserted(listItems.size() - 1);
+        onNoteEdited();
     }
 
     @Override
-    public void onItemChanged() {
-        updateNoteContent();
+    public void onItemChanged(ListItem item) {
+        itemChanges.itemChanged(item);
+        onNoteEdited();
     }
 
     @Override
     public void onItemDeleted(int position) {
         if (position >= 0 && position < listItems.size()) {
-            listItems.remove(position);
+            ListItem item = listItems.remove(position);
+            itemChanges.itemDeleted(item);
             listAdapter.notifyItemRemoved(position);
-            updateNoteContent();
+            onNoteEdited();
+        }
+    }
+
+    // Called for every step of a drag. The items in between keep the existing position values
+    // in their new order, so only the rows in that range are rewritten.
+    @Override
+    public void onItemMoved(int fromPosition, int toPosition) {
+        if (fromPosition == toPosition) return;
+        int first = Math.min(fromPosition, toPosition);
+        int last = Math.max(fromPosition, toPosition);
+        int[] positions = new int[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            positions[i - first] = listItems.get(i).getPosition();
+        }
+
+        listItems.add(toPosition, listItems.remove(fromPosition));
+        for (int i = first; i <= last; i++) {
+            ListItem item = listItems.get(i);
+            item.setPosition(positions[i - first]);
+            itemChanges.itemMoved(item);
+        }
+        listAdapter.notifyItemMoved(fromPosition, toPosition);
+        onNoteEdited();
+    }
+
+    private void onNoteEdited() {
+        if (isApplyingLoadedNote) return;
+
+        long now = SystemClock.uptimeMillis();
+        if (!hasUnsavedChanges) {
+            hasUnsavedChanges = true;
+            firstUnsavedEditTime = now;
         }
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        autosaveHandler.postAtTime(autosaveRunnable,
+                Math.min(now + AUTOSAVE_DEBOUNCE_MS, firstUnsavedEditTime + AUTOSAVE_MAX_DELAY_MS));
+    }
+
+    private void autosave() {
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        if (!hasUnsavedChanges || currentNote == null) return;
+
+        // Notes without a title are only kept once the user gives them one
+        String title = titleEditText.getText().toString().trim();
+        if (title.isEmpty()) return;
+
+        writeNote(title, success -> {
+            if (!success) onNoteEdited();
+        });
     }
 
-    private void updateNoteContent() {
-        if (isListNote && currentNote != null) {
-            Gson gson = new Gson();
-            currentNote.setContent(gson.toJson(listItems));
+    // Writes the current state of the editor in the background. Whatever was edited after
+    // this call is left for the next write.
+    private void writeNote(String title, NoteRepository.Callback<Boolean> callback) {
+        hasUnsavedChanges = false;
+        if (isWriting) {
+            queuedTitle = title;
+            queuedCallbacks.add(callback);
+            return;
+        }
+        isWriting = true;
+        currentNote.setTitle(title);
+        currentNote.setDateModified(new Date());
+
+        // The write thread gets copies, the editor goes on changing currentNote and the items
+        Note snapshot = new Note(currentNote);
+
+        // A saved note whose content or items are untouched only needs its small columns written
+        boolean isSaved = currentNote.getId() != 0;
+        if (isSaved && (isListNote ? itemChanges.isEmpty() : !isContentEdited)) {
+            repository.saveNoteMetadata(snapshot, success -> onNoteWritten(success, callback));
+            return;
+        }
+
+        if (isListNote) {
+            ListItemChanges changes = itemChanges.take();
+            List<ListItem> items = new ArrayList<>(listItems.size());
+            for (ListItem item : listItems) items.add(new ListItem(item));
+            ListItemChanges written = changes.snapshot(listItems, items);
+            repository.saveListNote(snapshot, items, written, id -> {
+                if (id > 0) {
+                    currentNote.setId(id);
+                    changes.applyIds(written);
+                } else {
+                    // Keep the edits so the next write retries them
+                    itemChanges.restore(changes);
+                }
+                onNoteWritten(id > 0, callback);
+            });
+        } else {
+            isContentEdited = false;
+            // The only place the edited text is turned into a string
+            snapshot.setContent(contentEditText.getText().toString());
+            repository.saveNote(snapshot, id -> {
+                if (id > 0) {
+                    currentNote.setId(id);
+                    // A later metadata-only save sends currentNote, it must not hold the old text
+                    currentNote.setContent(snapshot.getContent());
+                } else {
+                    isContentEdited = true;
+                }
+                onNoteWritten(id > 0, callback);
+            });
         }
     }
 
+    private void onNoteWritten(boolean success, NoteRepository.Callback<Boolean> callback) {
+        isWriting = false;
+        callback.onResult(success);
+        if (queuedCallbacks.isEmpty()) return;
+
+        // The writes asked for meanwhile are done as one, with what the editor holds now
+        List<NoteRepository.Callback<Boolean>> callbacks = new ArrayList<>(queuedCallbacks);
+        queuedCallbacks.clear();
+        writeNote(queuedTitle, result -> {
+            for (NoteRepository.Callback<Boolean> queued : callbacks) queued.onResult(result);
+        });
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.add_edit_menu, menu);
@@ -184,6 +348,7 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
         if (currentNote != null) {
             currentNote.setFavorite(!currentNote.isFavorite());
             invalidateOptionsMenu();
+            onNoteEdited();
         }
     }
 
@@ -206,105 +371,121 @@ public class AddEditNoteActivity extends AppCompatActivity implements ListItemAd
             return;
         }
 
-        currentNote.setTitle(title);
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        writeNote(title, success -> {
+            if (success) {
+                Toast.makeText(this, isEditMode ? "Note updated" : "Note saved", Toast.LENGTH_SHORT).show();
+                finish();
+            } else {
+                Toast.makeText(this, isEditMode ? "Error updating note" : "Error saving note",
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
 
-        if (!isListNote) {
-            currentNote.setContent(contentEditText.getText().toString());
-        } else {
-            updateNoteContent();
-        }
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Do not wait for the debounce when leaving, the process may be killed in the background
+        autosave();
+    }
 
-        currentNote.setDateModified(new Date());
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        if (contentLoader != null) contentLoadHandler.removeCallbacks(contentLoader);
+        if (pendingLoad != null) pendingLoad.cancel(false);
+        if (pendingItemsLoad != null) pendingItemsLoad.cancel(false);
+    }
 
-        if (isEditMode) {
-            new UpdateNoteTask().execute(currentNote);
-        } else {
-            new InsertNoteTask().execute(currentNote);
+    private void onNoteLoaded(Note note) {
+        if (note != null) {
+            currentNote = note;
+            isApplyingLoadedNote = true;
+            titleEditText.setText(note.getTitle());
+
+            isApplyingLoadedNote = false;
+
+            if (!note.isList()) {
+                loadContent(note.getContent());
+            }
+
+            invalidateOptionsMenu();
         }
     }
 
-    // AsyncTasks
-    private class LoadNoteTask extends AsyncTask<Integer, Void, Note> {
-        @Override
-        protected Note doInBackground(Integer... ids) {
-            return database.noteDao().getNoteById(ids[0]);
+    // The editor stays read-only until all chunks are in, so the content is never written
+    // while only part of it is shown
+    private void loadContent(String content) {
+        if (content == null || content.length() <= LOAD_CHUNK_CHARS) {
+            applyLoadedContent(() -> contentEditText.setText(content));
+            return;
         }
 
-        @Override
-        protected void onPostExecute(Note note) {
-            if (note != null) {
-                currentNote = note;
-                titleEditText.setText(note.getTitle());
-
-                if (note.isList()) {
-                    loadListItems(note.getContent());
+        contentEditText.setEnabled(false);
+        int[] loaded = {0};
+        contentLoader = new Runnable() {
+            @Override
+            public void run() {
+                int start = loaded[0];
+                int end = chunkEnd(content, start);
+                if (start == 0) {
+                    applyLoadedContent(() -> contentEditText.setText(content.subSequence(0, end)));
                 } else {
-                    contentEditText.setText(note.getContent());
+                    applyLoadedContent(() -> contentEditText.getText().append(content, start, end));
                 }
+                loaded[0] = end;
 
-                invalidateOptionsMenu();
+                if (end < content.length()) {
+                    contentLoadHandler.post(this);
+                } else {
+                    contentLoader = null;
+                    contentEditText.setEnabled(true);
+                    contentEditText.setSelection(0);
+                }
             }
-        }
+        };
+        contentLoader.run();
     }
 
-    private void loadListItems(String content) {
-        if (content != null && !content.isEmpty()) {
-            try {
-                Gson gson = new Gson();
-                Type listType = new TypeToken<List<ListItem>>(){}.getType();
-                List<ListItem> items = gson.fromJson(content, listType);
-                if (items != null) {
-                    listItems.clear();
-                    listItems.addAll(items);
-                    listAdapter.notifyDataSetChanged();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+    private void applyLoadedContent(Runnable change) {
+        isApplyingLoadedNote = true;
+        change.run();
+        isApplyingLoadedNote = false;
     }
 
-    private class InsertNoteTask extends AsyncTask<Note, Void, Boolean> {
-        @Override
-        protected Boolean doInBackground(Note... notes) {
-            try {
-                database.noteDao().insertNote(notes[0]);
-                return true;
-            } catch (Exception e) {
-                return false;
-            }
-        }
+    // Ends a chunk after a line break near the chunk size if there is one, which keeps the
+    // relayout of each append short, and never inside a surrogate pair
+    private static int chunkEnd(String content, int start) {
+        int end = Math.min(content.length(), start + LOAD_CHUNK_CHARS);
+        if (end == content.length()) return end;
 
-        @Override
-        protected void onPostExecute(Boolean success) {
-            if (success) {
-                Toast.makeText(AddEditNoteActivity.this, "Note saved", Toast.LENGTH_SHORT).show();
-                finish();
-            } else {
-                Toast.makeText(AddEditNoteActivity.this, "Error saving note", Toast.LENGTH_SHORT).show();
-            }
-        }
+        int lineEnd = content.lastIndexOf('\n', end - 1);
+        if (lineEnd >= start + LOAD_CHUNK_CHARS / 2) return lineEnd + 1;
+        if (Character.isHighSurrogate(content.charAt(end - 1))) end--;
+        return end;
     }
 
-    private class UpdateNoteTask extends AsyncTask<Note, Void, Boolean> {
-        @Override
-        protected Boolean doInBackground(Note... notes) {
-            try {
-                database.noteDao().updateNote(notes[0]);
-                return true;
-            } catch (Exception e) {
-                return false;
-            }
-        }
+    // Nothing is written for a note that could not be loaded, the blank editor would
+    // overwrite it
+    private void onLoadFailed(Exception error) {
+        if (pendingLoad != null) pendingLoad.cancel(false);
+        if (pendingItemsLoad != null) pendingItemsLoad.cancel(false);
+        currentNote = null;
+        hasUnsavedChanges = false;
+        queuedCallbacks.clear();
+        autosaveHandler.removeCallbacks(autosaveRunnable);
+        Toast.makeText(this, "Could not load note", Toast.LENGTH_SHORT).show();
+        finish();
+    }
 
-        @Override
-        protected void onPostExecute(Boolean success) {
-            if (success) {
-                Toast.makeText(AddEditNoteActivity.this, "Note updated", Toast.LENGTH_SHORT).show();
-                finish();
-            } else {
-                Toast.makeText(AddEditNoteActivity.this, "Error updating note", Toast.LENGTH_SHORT).show();
-            }
-        }
+    private void onListItemsLoaded(List<ListItem> items) {
+        int oldSize = listItems.size();
+        listItems.clear();
+        listAdapter.notifyItemRangeRemoved(0, oldSize);
+        listItems.addAll(items);
+        listAdapter.notifyItemRangeInserted(0, items.size());
+        addItemFab.setEnabled(true);
     }
 }
\ No newline at end of file
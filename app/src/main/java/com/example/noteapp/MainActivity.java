@@ -1,40 +1,130 @@
 package com.example.noteapp;
 
 import android.content.Intent;
-import android.os.AsyncTask;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
+import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.StaggeredGridLayoutManager;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.example.noteapp.adapter.NotesAdapter;
-import com.example.noteapp.database.AppDatabase;
-import com.example.noteapp.model.Note;
+import com.example.noteapp.database.NoteRepository;
+import com.example.noteapp.database.NoteSearch;
+import com.example.noteapp.model.NoteSummary;
+import com.example.noteapp.perf.Metrics;
+import com.example.noteapp.perf.PerfTrace;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNoteClickListener {
     private RecyclerView recyclerView;
     private NotesAdapter adapter;
-    private List<Note> notes;
-    private AppDatabase database;
+    private NoteRepository repository;
     private boolean showFavoritesOnly = false;
     private boolean isGridLayout = false;
+    // Both are kept, switching between them only rebinds the recycled cards
+    private LinearLayoutManager listLayoutManager;
+    private StaggeredGridLayoutManager gridLayoutManager;
+    // FTS query for the search box, null when not searching
+    private String searchQuery = null;
+    // In-flight list reads, a new reload cancels both so stale results are never shown
+    private Future<?> pendingLoad;
+    private Future<?> pendingLoadMore;
+    // The list last submitted to the adapter. Pages and optimistic changes are applied to it
+    // rather than to what the adapter shows, which lags behind while a diff runs.
+    private List<NoteSummary> shownNotes = new ArrayList<>();
+    // Favorite flags shown before their write finished, applied to lists loaded meanwhile
+    private final Map<Integer, Boolean> pendingFavorites = new HashMap<>();
+    private final Runnable notesObserver = this::onNotesChanged;
+    // Set when the notes table changed while the activity was in the background
+    private boolean notesChanged = false;
+    // Action mode shown while notes are selected for a batch action
+    private ActionMode selectionMode;
+    // Until the first list is shown, used to record the cold start timings once
+    private boolean firstLoadPending = true;
+
+    private static final int PAGE_SIZE = 30;
+    private static final int GRID_SPAN_COUNT = 2;
+    // Enough cards to fill a tall screen in grid mode, so switching layouts and flinging reuse
+    // cards instead of inflating new ones (the default keeps 5)
+    private static final int RECYCLED_CARDS = 32;
+    private static final int CACHED_CARDS = 4;
+    private static final int SEARCH_LIMIT = 200;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long start = PerfTrace.begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        long phase = PerfTrace.begin("MainActivity.initViews");
         initViews();
+        PerfTrace.end("MainActivity.initViews", phase);
+
+        phase = PerfTrace.begin("MainActivity.setupRecyclerView");
         setupRecyclerView();
+        PerfTrace.end("MainActivity.setupRecyclerView", phase);
+
         loadNotes();
+
+        // Reload only when the notes table actually changes instead of on every resume
+        repository.addNotesObserver(notesObserver);
+
+        recordFirstFrame();
+        PerfTrace.end("MainActivity.onCreate", start);
+    }
+
+    // Records the time from process start until the first frame is about to be drawn
+    private void recordFirstFrame() {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                PerfTrace.markSinceProcessStart("startup.firstFrame");
+                return true;
+            }
+        });
+    }
+
+    // Records the time from process start until the first notes are on screen
+    private void onFirstLoadShown() {
+        firstLoadPending = false;
+        recyclerView.post(() -> {
+            PerfTrace.markSinceProcessStart("startup.firstContent");
+            reportFullyDrawn();
+        });
+    }
+
+    private void onNotesChanged() {
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            loadNotes();
+        } else {
+            notesChanged = true;
+        }
     }
 
     private void initViews() {
@@ -44,25 +134,54 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
         recyclerView = findViewById(R.id.recyclerView);
         FloatingActionButton fab = findViewById(R.id.fab);
 
-        database = AppDatabase.getInstance(this);
-        notes = new ArrayList<>();
+        repository = NoteRepository.getInstance(this);
 
         fab.setOnClickListener(v -> showCreateNoteDialog());
     }
 
     private void setupRecyclerView() {
-        adapter = new NotesAdapter(this, notes);
+        adapter = new NotesAdapter(this);
         adapter.setOnNoteClickListener(this);
+        adapter.setOnLoadMoreListener(this::loadMoreNotes);
         recyclerView.setAdapter(adapter);
+
+        // Card contents never change the size of the list itself
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setItemViewCacheSize(CACHED_CARDS);
+        // One pool for both layouts, cards dropped by one are picked up by the other
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(0, RECYCLED_CARDS);
+
+        // Prefetch binds the next cards during idle frame time, which also starts measuring
+        // their text in the background before they scroll into view
+        listLayoutManager = new LinearLayoutManager(this);
+        listLayoutManager.setItemPrefetchEnabled(true);
+        gridLayoutManager = new StaggeredGridLayoutManager(GRID_SPAN_COUNT, StaggeredGridLayoutManager.VERTICAL);
+        gridLayoutManager.setItemPrefetchEnabled(true);
         updateLayoutManager();
     }
 
+    // Keeps the first visible note in view across a switch
     private void updateLayoutManager() {
-        if (isGridLayout) {
-            recyclerView.setLayoutManager(new StaggeredGridLayoutManager(2, StaggeredGridLayoutManager.VERTICAL));
-        } else {
-            recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        RecyclerView.LayoutManager current = recyclerView.getLayoutManager();
+        RecyclerView.LayoutManager target = isGridLayout ? gridLayoutManager : listLayoutManager;
+        if (current == target) return;
+
+        int firstVisible = RecyclerView.NO_POSITION;
+        if (current == listLayoutManager) {
+            firstVisible = listLayoutManager.findFirstVisibleItemPosition();
+        } else if (current == gridLayoutManager) {
+            for (int position : gridLayoutManager.findFirstVisibleItemPositions(null)) {
+                if (position != RecyclerView.NO_POSITION
+                        && (firstVisible == RecyclerView.NO_POSITION || position < firstVisible)) {
+                    firstVisible = position;
+                }
+            }
         }
+
+        // Span assignments were not kept up to date with adapter changes while it was detached
+        if (target == gridLayoutManager) gridLayoutManager.invalidateSpanAssignments();
+        recyclerView.setLayoutManager(target);
+        if (firstVisible != RecyclerView.NO_POSITION) target.scrollToPosition(firstVisible);
     }
 
     private void showCreateNoteDialog() {
@@ -77,21 +196,134 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
     }
 
     private void loadNotes() {
-        new LoadNotesTask().execute();
+        // Cancelling a read that has not started yet coalesces rapid reloads into one query
+        cancelPendingLoads();
+        if (searchQuery != null) {
+            pendingLoad = repository.searchNotes(searchQuery, showFavoritesOnly, SEARCH_LIMIT, results -> {
+                pendingLoad = null;
+                adapter.setHasMore(false);
+                showNotes(withPendingFavorites(new ArrayList<>(results)));
+            }, error -> {
+                pendingLoad = null;
+                onLoadFailed();
+            });
+            return;
+        }
+        // Reload at least as many rows as are already shown so the scroll position survives
+        int limit = Math.max(PAGE_SIZE, shownNotes.size());
+        long start = PerfTrace.beginAsync("MainActivity.loadNotes");
+        pendingLoad = repository.loadFirstPage(showFavoritesOnly, limit, noteList -> {
+            pendingLoad = null;
+            adapter.setHasMore(noteList.size() == limit);
+            showNotes(withPendingFavorites(noteList));
+            PerfTrace.endAsync("MainActivity.loadNotes", start);
+            if (firstLoadPending) onFirstLoadShown();
+        }, error -> {
+            pendingLoad = null;
+            PerfTrace.endAsync("MainActivity.loadNotes", start);
+            onLoadFailed();
+        });
+    }
+
+    private void loadMoreNotes() {
+        if (shownNotes.isEmpty()) {
+            adapter.onLoadMoreFailed();
+            return;
+        }
+        NoteSummary lastNote = shownNotes.get(shownNotes.size() - 1);
+        pendingLoadMore = repository.loadPageAfter(showFavoritesOnly, lastNote, PAGE_SIZE, noteList -> {
+            pendingLoadMore = null;
+            adapter.setHasMore(noteList.size() == PAGE_SIZE);
+            List<NoteSummary> notes = new ArrayList<>(shownNotes);
+            notes.addAll(withPendingFavorites(noteList));
+            showNotes(notes);
+        }, error -> {
+            pendingLoadMore = null;
+            adapter.onLoadMoreFailed();
+            onLoadFailed();
+        });
+    }
+
+    private void showNotes(List<NoteSummary> notes) {
+        shownNotes = notes;
+        adapter.updateNotes(notes);
+    }
+
+    // The notes shown stay, the next reload or scroll to the end tries again
+    private void onLoadFailed() {
+        Toast.makeText(this, "Could not load notes", Toast.LENGTH_SHORT).show();
+    }
+
+    private void cancelPendingLoads() {
+        if (pendingLoad != null) pendingLoad.cancel(false);
+        if (pendingLoadMore != null) pendingLoadMore.cancel(false);
+        pendingLoad = null;
+        pendingLoadMore = null;
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        loadNotes();
+    protected void onStart() {
+        super.onStart();
+        if (notesChanged) {
+            notesChanged = false;
+            loadNotes();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        repository.removeNotesObserver(notesObserver);
+        cancelPendingLoads();
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
+
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                onSearchTextChanged(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                onSearchTextChanged(null);
+                return true;
+            }
+        });
+
+        boolean isDebuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        menu.findItem(R.id.action_metrics).setVisible(isDebuggable);
         return true;
     }
 
+    private void onSearchTextChanged(String text) {
+        String matchQuery = NoteSearch.buildMatchQuery(text);
+        if (matchQuery == null && searchQuery == null) return;
+        if (matchQuery != null && matchQuery.equals(searchQuery)) return;
+
+        searchQuery = matchQuery;
+        adapter.setHighlightMatches(searchQuery != null);
+        loadNotes();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
@@ -106,13 +338,87 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
             item.setIcon(isGridLayout ? R.drawable.ic_view_list : R.drawable.ic_view_grid);
             updateLayoutManager();
             return true;
+        } else if (id == R.id.action_export) {
+            exportLauncher.launch("notes_backup.ndjson");
+            return true;
+        } else if (id == R.id.action_import) {
+            importLauncher.launch(new String[]{"*/*"});
+            return true;
+        } else if (id == R.id.action_metrics) {
+            showMetrics();
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    // Debug report of bind and query latencies, the full span log goes to logcat
+    private void showMetrics() {
+        Log.i("PerfTrace", PerfTrace.dump());
+        TextView report = new TextView(this);
+        report.setTypeface(Typeface.MONOSPACE);
+        report.setTextSize(11);
+        int padding = (int) (16 * getResources().getDisplayMetrics().density);
+        report.setPadding(padding, padding, padding, padding);
+        report.setText(Metrics.dump());
+
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(report);
+        new AlertDialog.Builder(this)
+                .setTitle("Performance Report")
+                .setView(scrollView)
+                .setPositiveButton("Close", null)
+                .setNeutralButton("Reset", (dialog, which) -> {
+                    Metrics.reset();
+                    PerfTrace.reset();
+                })
+                .show();
+    }
+
+    // Backup through the system file picker, the archive streams the notes in the background
+    private final ActivityResultLauncher<String> exportLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/x-ndjson"), this::exportNotes);
+
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), this::importNotes);
+
+    private void exportNotes(Uri uri) {
+        if (uri == null) return;
+        try {
+            // Truncated, a shorter export over an existing file must not leave its tail behind
+            ParcelFileDescriptor pfd = getContentResolver().openFileDescriptor(uri, "wt");
+            FileChannel channel = new ParcelFileDescriptor.AutoCloseOutputStream(pfd).getChannel();
+            repository.exportNotes(channel, count -> Toast.makeText(this,
+                    count >= 0 ? "Exported " + count + " notes" : "Export failed",
+                    Toast.LENGTH_SHORT).show());
+        } catch (Exception e) {
+            e.printStackTrace();
+            Toast.makeText(this, "Export failed", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void importNotes(Uri uri) {
+        if (uri == null) return;
+        try {
+            ParcelFileDescriptor pfd = getContentResolver().openFileDescriptor(uri, "r");
+            FileChannel channel = new ParcelFileDescriptor.AutoCloseInputStream(pfd).getChannel();
+            repository.importNotes(channel, count -> Toast.makeText(this,
+                    count >= 0 ? "Imported " + count + " notes" : "Import failed",
+                    Toast.LENGTH_SHORT).show());
+        } catch (Exception e) {
+            e.printStackTrace();
+            Toast.makeText(this, "Import failed", Toast.LENGTH_SHORT).show();
+        }
+    }
+
     @Override
-    public void onNoteClick(Note note) {
+    public void onNoteClick(NoteSummary note) {
+        if (adapter.isSelectionMode()) {
+            toggleSelection(note);
+            return;
+        }
+        // Usually in the note cache by the time the editor is created
+        repository.prefetchNote(note.getId());
         Intent intent = new Intent(this, AddEditNoteActivity.class);
         intent.putExtra("note_id", note.getId());
         intent.putExtra("is_list", note.isList());
@@ -120,67 +426,140 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
     }
 
     @Override
-    public void onNoteLongClick(Note note) {
-        AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        builder.setTitle("Delete Note")
-                .setMessage("Are you sure you want to delete this note?")
-                .setPositiveButton("Delete", (dialog, which) -> deleteNote(note))
-                .setNegativeButton("Cancel", null)
-                .show();
-    }
-
-    @Override
-    public void onFavoriteClick(Note note) {
-        note.setFavorite(!note.isFavorite());
-        new UpdateNoteTask().execute(note);
+    public void onNoteLongClick(NoteSummary note) {
+        toggleSelection(note);
     }
 
-    private void deleteNote(Note note) {
-        new DeleteNoteTask().execute(note);
+    private void toggleSelection(NoteSummary note) {
+        adapter.toggleSelection(note);
+        int count = adapter.getSelectedIds().size();
+        if (count == 0) {
+            if (selectionMode != null) selectionMode.finish();
+            return;
+        }
+        if (selectionMode == null) {
+            selectionMode = startSupportActionMode(selectionCallback);
+        }
+        selectionMode.setTitle(count + " selected");
     }
 
-    // AsyncTasks
-    private class LoadNotesTask extends AsyncTask<Void, Void, List<Note>> {
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
         @Override
-        protected List<Note> doInBackground(Void... voids) {
-            if (showFavoritesOnly) {
-                return database.noteDao().getFavoriteNotes();
-            } else {
-                return database.noteDao().getAllNotes();
-            }
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.selection_menu, menu);
+            return true;
         }
 
         @Override
-        protected void onPostExecute(List<Note> noteList) {
-            notes.clear();
-            notes.addAll(noteList);
-            adapter.notifyDataSetChanged();
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
         }
-    }
 
-    private class UpdateNoteTask extends AsyncTask<Note, Void, Void> {
         @Override
-        protected Void doInBackground(Note... notes) {
-            database.noteDao().updateNote(notes[0]);
-            return null;
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            List<Integer> ids = adapter.getSelectedIds();
+            int id = item.getItemId();
+
+            if (id == R.id.action_favorite_selected || id == R.id.action_unfavorite_selected) {
+                // One transaction for the whole selection, the notes observer refreshes the list once
+                repository.setFavorite(ids, id == R.id.action_favorite_selected, null);
+                mode.finish();
+                return true;
+            } else if (id == R.id.action_delete_selected) {
+                confirmDelete(ids, mode);
+                return true;
+            }
+            return false;
         }
 
         @Override
-        protected void onPostExecute(Void aVoid) {
-            loadNotes();
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            adapter.clearSelection();
         }
+    };
+
+    private void confirmDelete(List<Integer> ids, ActionMode mode) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(ids.size() == 1 ? "Delete Note" : "Delete Notes")
+                .setMessage(ids.size() == 1 ? "Are you sure you want to delete this note?"
+                        : "Are you sure you want to delete " + ids.size() + " notes?")
+                .setPositiveButton("Delete", (dialog, which) -> {
+                    repository.deleteNotes(ids, null);
+                    mode.finish();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
     }
 
-    private class DeleteNoteTask extends AsyncTask<Note, Void, Void> {
-        @Override
-        protected Void doInBackground(Note... notes) {
-            database.noteDao().deleteNote(notes[0]);
-            return null;
+    // The new state is shown at once and written in the background without a reload.
+    // If the write fails the star is put back.
+    @Override
+    public void onFavoriteClick(NoteSummary note) {
+        int id = note.getId();
+        boolean isFavorite = !note.isFavorite();
+        pendingFavorites.put(id, isFavorite);
+        showNotes(withFavorite(shownNotes, id, isFavorite));
+
+        repository.setFavoriteOptimistic(id, isFavorite, success -> {
+            if (Boolean.valueOf(isFavorite).equals(pendingFavorites.get(id))) {
+                pendingFavorites.remove(id);
+            }
+            if (!success) {
+                Toast.makeText(this, "Could not update favorite", Toast.LENGTH_SHORT).show();
+                showNotes(withFavorite(shownNotes, id, !isFavorite));
+            }
+            // A load started before the write may still deliver the old flag
+            if (pendingLoad != null || pendingLoadMore != null) loadNotes();
+        });
+    }
+
+    private List<NoteSummary> withPendingFavorites(List<NoteSummary> notes) {
+        for (Map.Entry<Integer, Boolean> entry : pendingFavorites.entrySet()) {
+            notes = withFavorite(notes, entry.getKey(), entry.getValue());
         }
+        return notes;
+    }
 
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            loadNotes();
+    // Copy of notes with the favorite flag of one note changed and the note moved to where a
+    // reload would put it. Favorites come first, each group by dateModified and id descending.
+    // Search results keep their rank order.
+    private List<NoteSummary> withFavorite(List<NoteSummary> notes, int id, boolean isFavorite) {
+        int index = -1;
+        for (int i = 0; i < notes.size(); i++) {
+            if (notes.get(i).getId() == id) {
+                index = i;
+                break;
+            }
+        }
+        if (index == -1 || notes.get(index).isFavorite() == isFavorite) return notes;
+
+        NoteSummary updated = new NoteSummary(notes.get(index));
+        updated.setFavorite(isFavorite);
+        List<NoteSummary> result = new ArrayList<>(notes);
+        result.remove(index);
+
+        if (showFavoritesOnly && !isFavorite) return result;
+        if (searchQuery != null) {
+            result.add(index, updated);
+            return result;
+        }
+
+        int position = 0;
+        while (position < result.size() && comesBefore(result.get(position), updated)) {
+            position++;
         }
+        // Past the last loaded note it belongs to a page that is not loaded yet
+        if (position < result.size() || !adapter.hasMore()) {
+            result.add(position, updated);
+        }
+        return result;
+    }
+
+    private static boolean comesBefore(NoteSummary a, NoteSummary b) {
+        if (a.isFavorite() != b.isFavorite()) return a.isFavorite();
+        int byDate = a.getDateModified().compareTo(b.getDateModified());
+        if (byDate != 0) return byDate > 0;
+        return a.getId() > b.getId();
     }
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.example.noteapp;
+
+import android.app.Application;
+import com.example.noteapp.database.NoteRepository;
+import com.example.noteapp.perf.PerfTrace;
+
+public class NoteApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Startup timings are measured from here, the closest the app gets to process start
+        PerfTrace.markProcessStart();
+
+        // Open the database in the background while the first activity is being created
+        NoteRepository.getInstance(this).prewarm();
+    }
+}
@@ -2,6 +2,7 @@ package com.example.noteapp.adapter;
 
 import android.content.Context;
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -10,9 +11,11 @@ import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.noteapp.R;
 import com.example.noteapp.model.ListItem;
+import com.example.noteapp.perf.PerfTrace;
 import java.util.List;
 
 public class ListItemAdapter extends RecyclerView.Adapter<ListItemAdapter.ListItemViewHolder> {
@@ -21,13 +24,42 @@ public class ListItemAdapter extends RecyclerView.Adapter<ListItemAdapter.ListIt
     private OnItemChangeListener listener;
 
     public interface OnItemChangeListener {
-        void onItemChanged();
+        void onItemChanged(ListItem item);
         void onItemDeleted(int position);
+        void onItemMoved(int fromPosition, int toPosition);
     }
 
     public ListItemAdapter(Context context, List<ListItem> items) {
         this.context = context;
         this.items = items;
+        setHasStableIds(true);
+    }
+
+    // Drag to reorder and swipe to delete, both reported through the listener which
+    // updates the list and notifies the adapter
+    public ItemTouchHelper createItemTouchHelper() {
+        return new ItemTouchHelper(new ItemTouchHelper.SimpleCallback(
+                ItemTouchHelper.UP | ItemTouchHelper.DOWN,
+                ItemTouchHelper.START | ItemTouchHelper.END) {
+            @Override
+            public boolean onMove(@NonNull RecyclerView recyclerView,
+                                  @NonNull RecyclerView.ViewHolder viewHolder,
+                                  @NonNull RecyclerView.ViewHolder target) {
+                int from = viewHolder.getBindingAdapterPosition();
+                int to = target.getBindingAdapterPosition();
+                if (from == RecyclerView.NO_POSITION || to == RecyclerView.NO_POSITION) return false;
+                if (listener != null) listener.onItemMoved(from, to);
+                return true;
+            }
+
+            @Override
+            public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
+                int position = viewHolder.getBindingAdapterPosition();
+                if (position != RecyclerView.NO_POSITION && listener != null) {
+                    listener.onItemDeleted(position);
+                }
+            }
+        });
     }
 
     public void setOnItemChangeListener(OnItemChangeListener listener) {
@@ -43,33 +75,12 @@ public class ListItemAdapter extends RecyclerView.Adapter<ListItemAdapter.ListIt
 
     @Override
     public void onBindViewHolder(@NonNull ListItemViewHolder holder, int position) {
-        ListItem item = items.get(position);
-
-        holder.checkBox.setChecked(item.isChecked());
-        holder.editText.setText(item.getText());
-
-        holder.checkBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            item.setChecked(isChecked);
-            if (listener != null) listener.onItemChanged();
-        });
-
-        holder.editText.addTextChangedListener(new TextWatcher() {
-            @Override
-            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
-
-            @Override
-            public void onTextChanged(CharSequence s, int start, int before, int count) {
-                item.setText(s.toString());
-                if (listener != null) listener.onItemChanged();
-            }
-
-            @Override
-            public void afterTextChanged(Editable s) {}
-        });
-
-        holder.deleteButton.setOnClickListener(v -> {
-            if (listener != null) listener.onItemDeleted(position);
-        });
+        long start = PerfTrace.begin("ListItemAdapter.bind");
+        try {
+            holder.bind(items.get(position));
+        } finally {
+            PerfTrace.end("ListItemAdapter.bind", start);
+        }
     }
 
     @Override
@@ -77,16 +88,74 @@ public class ListItemAdapter extends RecyclerView.Adapter<ListItemAdapter.ListIt
         return items.size();
     }
 
-    static class ListItemViewHolder extends RecyclerView.ViewHolder {
+    @Override
+    public long getItemId(int position) {
+        return items.get(position).getLocalId();
+    }
+
+    // Each holder owns one text watcher and one checkbox listener for its whole life. They look
+    // up the item at the holder's current position, so rebinding only updates the views and
+    // typing costs a single copy of the edited text.
+    class ListItemViewHolder extends RecyclerView.ViewHolder {
         CheckBox checkBox;
         EditText editText;
         ImageButton deleteButton;
+        // Set while bind() fills in the views, so that does not count as an edit
+        private boolean isBinding;
 
         ListItemViewHolder(@NonNull View itemView) {
             super(itemView);
             checkBox = itemView.findViewById(R.id.checkBox);
             editText = itemView.findViewById(R.id.editText);
             deleteButton = itemView.findViewById(R.id.deleteButton);
+
+            checkBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                ListItem item = currentItem();
+                if (item == null || item.isChecked() == isChecked) return;
+                item.setChecked(isChecked);
+                if (listener != null) listener.onItemChanged(item);
+            });
+
+            editText.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count) {
+                    ListItem item = currentItem();
+                    if (item == null) return;
+                    item.setText(s.toString());
+                    if (listener != null) listener.onItemChanged(item);
+                }
+
+                @Override
+                public void afterTextChanged(Editable s) {}
+            });
+
+            deleteButton.setOnClickListener(v -> {
+                int position = getBindingAdapterPosition();
+                if (position != RecyclerView.NO_POSITION && listener != null) {
+                    listener.onItemDeleted(position);
+                }
+            });
+        }
+
+        void bind(ListItem item) {
+            isBinding = true;
+            checkBox.setChecked(item.isChecked());
+            // Setting the same text again would only reset the cursor
+            if (!TextUtils.equals(editText.getText(), item.getText())) {
+                editText.setText(item.getText());
+            }
+            isBinding = false;
+        }
+
+        // Item shown by this holder, or null while binding or when it is not in the list
+        private ListItem currentItem() {
+            if (isBinding) return null;
+            int position = getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || position >= items.size()) return null;
+            return items.get(position);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package com.example.noteapp.adapter;
+
+import androidx.core.text.PrecomputedTextCompat;
+import com.example.noteapp.model.NoteSummary;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+// Bounded LRU cache of the display text of note cards, keyed by note id and dateModified.
+// An entry is only used while the note's dateModified and preview are the ones it was built from,
+// so an edited note is rebuilt on its next bind. A view holder that shows an entry marks it bound
+// until it shows another one or is recycled, its text view may still wait for the measuring.
+// Measuring that has not finished is cancelled once its entry is replaced or evicted and no
+// longer bound, so a view never waits for a cancelled future.
+// Only accessed from the main thread, so a plain access-ordered map is enough.
+public class NoteTextCache {
+    private final int maxEntries;
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    public static class Entry {
+        final long dateModified;
+        final String sourcePreview;
+        // Null when precomputedPreview is set, it holds the preview
+        public final CharSequence preview;
+        public final String date;
+        // Title and preview measured in the background, null when no text params were known yet
+        public final Future<PrecomputedTextCompat> precomputedTitle;
+        public final Future<PrecomputedTextCompat> precomputedPreview;
+        // View holders showing this entry, and whether it has left the cache
+        private int boundCount;
+        private boolean removed;
+
+        Entry(long dateModified, String sourcePreview, CharSequence preview, String date,
+              Future<PrecomputedTextCompat> precomputedTitle, Future<PrecomputedTextCompat> precomputedPreview) {
+            this.dateModified = dateModified;
+            this.sourcePreview = sourcePreview;
+            this.preview = preview;
+            this.date = date;
+            this.precomputedTitle = precomputedTitle;
+            this.precomputedPreview = precomputedPreview;
+        }
+    }
+
+    public NoteTextCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // Returns the cached text for the note, or null when it has to be built again
+    public Entry get(NoteSummary note) {
+        Entry entry = entries.get(note.getId());
+        if (entry != null && entry.dateModified == note.getDateModified().getTime()
+                && (entry.sourcePreview == note.getPreview()
+                || (entry.sourcePreview != null && entry.sourcePreview.equals(note.getPreview())))) {
+            hitCount++;
+            return entry;
+        }
+        missCount++;
+        return null;
+    }
+
+    public Entry put(NoteSummary note, CharSequence preview, String date,
+                     Future<PrecomputedTextCompat> precomputedTitle,
+                     Future<PrecomputedTextCompat> precomputedPreview) {
+        Entry entry = new Entry(note.getDateModified().getTime(), note.getPreview(), preview, date,
+                precomputedTitle, precomputedPreview);
+        Entry replaced = entries.put(note.getId(), entry);
+        if (replaced != null) entryRemoved(replaced);
+        Iterator<Map.Entry<Integer, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            entryRemoved(evicted);
+        }
+        return entry;
+    }
+
+    // Marks the entry as shown by a view holder, until it is passed to unbind
+    public void bind(Entry entry) {
+        entry.boundCount++;
+    }
+
+    public void unbind(Entry entry) {
+        if (--entry.boundCount == 0 && entry.removed) cancel(entry);
+    }
+
+    private static void entryRemoved(Entry entry) {
+        entry.removed = true;
+        if (entry.boundCount == 0) cancel(entry);
+    }
+
+    private static void cancel(Entry entry) {
+        cancel(entry.precomputedTitle);
+        cancel(entry.precomputedPreview);
+    }
+
+    private static void cancel(Future<PrecomputedTextCompat> precomputed) {
+        if (precomputed != null && !precomputed.isDone()) precomputed.cancel(false);
+    }
+
+    public void clear() {
+        for (Entry entry : entries.values()) entryRemoved(entry);
+        entries.clear();
+    }
+
+    public int getHitCount() { return hitCount; }
+
+    public int getMissCount() { return missCount; }
+
+    public int size() { return entries.size(); }
+
+    public int maxSize() { return maxEntries; }
+}
@@ -1,69 +1,218 @@
 package com.example.noteapp.adapter;
 
 import android.content.Context;
+import android.content.res.ColorStateList;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
 import androidx.cardview.widget.CardView;
+import androidx.core.content.ContextCompat;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.view.ViewCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.noteapp.R;
-import com.example.noteapp.model.Note;
-import com.example.noteapp.model.ListItem;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
+import com.example.noteapp.database.NoteSearch;
+import com.example.noteapp.model.NoteSummary;
+import com.example.noteapp.perf.PerfTrace;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHolder> {
     private Context context;
-    private List<Note> notes;
+    // Diffs between lists are computed on a background thread, only changed items are rebound
+    private final AsyncListDiffer<NoteSummary> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private OnNoteClickListener listener;
+    private OnLoadMoreListener loadMoreListener;
+    private boolean hasMore = false;
+    private boolean loadingMore = false;
+    private boolean highlightMatches = false;
+    // Ids of the notes selected for a batch action, empty outside of selection mode
+    private final Set<Integer> selectedIds = new HashSet<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
+    private final NoteTextCache textCache;
+    // Text layout params of the card title and preview, known once the first card is laid out.
+    // Read any earlier, the text direction is not resolved yet and would not match the view.
+    private PrecomputedTextCompat.Params titleParams;
+    private PrecomputedTextCompat.Params previewParams;
+
+    // Request the next page once the user is this many items away from the end
+    private static final int LOAD_MORE_THRESHOLD = 10;
+    public static final int DEFAULT_TEXT_CACHE_SIZE = 500;
+    // Measures card text off the main thread, shared by all adapters
+    private static final ExecutorService TEXT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NotesAdapter-text");
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
 
     public interface OnNoteClickListener {
-        void onNoteClick(Note note);
-        void onNoteLongClick(Note note);
-        void onFavoriteClick(Note note);
+        void onNoteClick(NoteSummary note);
+        void onNoteLongClick(NoteSummary note);
+        void onFavoriteClick(NoteSummary note);
+    }
+
+    // Asks for the page after the notes submitted last
+    public interface OnLoadMoreListener {
+        void onLoadMore();
+    }
+
+    private static final DiffUtil.ItemCallback<NoteSummary> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<NoteSummary>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull NoteSummary oldNote, @NonNull NoteSummary newNote) {
+                    return oldNote.getId() == newNote.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull NoteSummary oldNote, @NonNull NoteSummary newNote) {
+                    // Any edit bumps dateModified, the favorite flag and search snippets change without it
+                    return Objects.equals(oldNote.getDateModified(), newNote.getDateModified())
+                            && oldNote.isFavorite() == newNote.isFavorite()
+                            && Objects.equals(oldNote.getPreview(), newNote.getPreview());
+                }
+            };
+
+    public NotesAdapter(Context context) {
+        this(context, DEFAULT_TEXT_CACHE_SIZE);
     }
 
-    public NotesAdapter(Context context, List<Note> notes) {
+    public NotesAdapter(Context context, int textCacheSize) {
         this.context = context;
-        this.notes = notes;
+        this.textCache = new NoteTextCache(textCacheSize);
+        setHasStableIds(true);
+    }
+
+    public NoteTextCache getTextCache() {
+        return textCache;
     }
 
     public void setOnNoteClickListener(OnNoteClickListener listener) {
         this.listener = listener;
     }
 
+    public void setOnLoadMoreListener(OnLoadMoreListener loadMoreListener) {
+        this.loadMoreListener = loadMoreListener;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+        this.loadingMore = false;
+    }
+
+    // The page requested through the load more listener did not arrive, the next bind near the
+    // end requests it again
+    public void onLoadMoreFailed() {
+        loadingMore = false;
+    }
+
+    // When showing search results the previews are snippets with marked matches
+    public void setHighlightMatches(boolean highlightMatches) {
+        this.highlightMatches = highlightMatches;
+    }
+
+    public boolean isSelectionMode() {
+        return !selectedIds.isEmpty();
+    }
+
+    public void toggleSelection(NoteSummary note) {
+        if (!selectedIds.remove(note.getId())) {
+            selectedIds.add(note.getId());
+        }
+        // The clicked item may be an older copy of the note, so look it up by id
+        List<NoteSummary> notes = differ.getCurrentList();
+        for (int position = 0; position < notes.size(); position++) {
+            if (notes.get(position).getId() == note.getId()) {
+                notifyItemChanged(position);
+                break;
+            }
+        }
+    }
+
+    public List<Integer> getSelectedIds() {
+        return new ArrayList<>(selectedIds);
+    }
+
+    public void clearSelection() {
+        if (selectedIds.isEmpty()) return;
+        selectedIds.clear();
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
     @NonNull
     @Override
     public NoteViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(context).inflate(R.layout.item_note, parent, false);
-        return new NoteViewHolder(view);
+        NoteViewHolder holder = new NoteViewHolder(view);
+        // Every card has the same text styles, so the params of the first one fit all of them
+        if (titleParams == null) {
+            holder.titleTextView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                           int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                    v.removeOnLayoutChangeListener(this);
+                    if (titleParams == null) {
+                        titleParams = TextViewCompat.getTextMetricsParams(holder.titleTextView);
+                        previewParams = TextViewCompat.getTextMetricsParams(holder.contentTextView);
+                    }
+                }
+            });
+        }
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull NoteViewHolder holder, int position) {
-        Note note = notes.get(position);
+        long start = PerfTrace.begin("NotesAdapter.bind");
+        try {
+            bindNote(holder, position);
+        } finally {
+            PerfTrace.end("NotesAdapter.bind", start);
+        }
+    }
+
+    private void bindNote(NoteViewHolder holder, int position) {
+        NoteSummary note = differ.getCurrentList().get(position);
 
-        holder.titleTextView.setText(note.getTitle());
+        maybeLoadMore(position);
 
-        // Handle content display based on note type
-        if (note.isList()) {
-            // Format list content for display
-            String formattedContent = formatListContent(note.getContent());
-            holder.contentTextView.setText(formattedContent);
+        NoteTextCache.Entry text = textFor(note);
+        if (holder.boundText != text) {
+            if (holder.boundText != null) textCache.unbind(holder.boundText);
+            textCache.bind(text);
+            holder.boundText = text;
+        }
+        if (text.precomputedTitle != null && paramsMatch(holder)) {
+            setTextFuture(holder.titleTextView, text.precomputedTitle);
+            setTextFuture(holder.contentTextView, text.precomputedPreview);
         } else {
-            // Regular text note
-            holder.contentTextView.setText(note.getContent());
+            setText(holder.titleTextView, note.getTitle());
+            setText(holder.contentTextView, text.preview != null ? text.preview : previewOf(note));
         }
-
-        SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
-        holder.dateTextView.setText(sdf.format(note.getDateModified()));
+        holder.dateTextView.setText(text.date);
 
         holder.favoriteImageView.setImageResource(note.isFavorite() ?
                 R.drawable.ic_favorite_filled : R.drawable.ic_favorite_border);
@@ -71,6 +220,9 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         holder.typeImageView.setImageResource(note.isList() ?
                 R.drawable.ic_list : R.drawable.ic_note);
 
+        holder.cardView.setCardBackgroundColor(selectedIds.contains(note.getId()) ?
+                ContextCompat.getColorStateList(context, R.color.note_selected) : holder.defaultBackground);
+
         holder.cardView.setOnClickListener(v -> {
             if (listener != null) listener.onNoteClick(note);
         });
@@ -85,71 +237,124 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         });
     }
 
-    private String formatListContent(String jsonContent) {
-        try {
-            if (jsonContent == null || jsonContent.isEmpty()) {
-                return "Empty list";
-            }
+    // Preview is precomputed on save, for list notes it is already formatted.
+    // Once the text params are known the title and preview are also measured in the background,
+    // only for notes being bound, which includes the ones RecyclerView prefetches. Search
+    // snippets are then also highlighted in the background.
+    private NoteTextCache.Entry textFor(NoteSummary note) {
+        NoteTextCache.Entry text = textCache.get(note);
+        if (text != null && (titleParams == null || text.precomputedTitle != null)) return text;
 
-            Gson gson = new Gson();
-            Type listType = new TypeToken<List<ListItem>>(){}.getType();
-            List<ListItem> items = gson.fromJson(jsonContent, listType);
+        String date = dateFormat.format(note.getDateModified());
+        if (titleParams == null) {
+            return textCache.put(note, previewOf(note), date, null, null);
+        }
 
-            if (items == null || items.isEmpty()) {
-                return "Empty list";
-            }
+        Future<PrecomputedTextCompat> precomputedTitle = PrecomputedTextCompat.getTextFuture(
+                note.getTitle() != null ? note.getTitle() : "", titleParams, TEXT_EXECUTOR);
+        Future<PrecomputedTextCompat> precomputedPreview;
+        if (highlightMatches) {
+            String snippet = note.getPreview();
+            PrecomputedTextCompat.Params params = previewParams;
+            FutureTask<PrecomputedTextCompat> task = new FutureTask<>(() -> {
+                CharSequence highlighted = NoteSearch.highlight(snippet);
+                return PrecomputedTextCompat.create(highlighted != null ? highlighted : "", params);
+            });
+            TEXT_EXECUTOR.execute(task);
+            precomputedPreview = task;
+        } else {
+            precomputedPreview = PrecomputedTextCompat.getTextFuture(
+                    note.getPreview() != null ? note.getPreview() : "", previewParams, TEXT_EXECUTOR);
+        }
+        return textCache.put(note, null, date, precomputedTitle, precomputedPreview);
+    }
 
-            StringBuilder preview = new StringBuilder();
-            int itemCount = 0;
-            int maxItems = 3; // Show max 3 items in preview
+    private CharSequence previewOf(NoteSummary note) {
+        return highlightMatches ? NoteSearch.highlight(note.getPreview()) : note.getPreview();
+    }
 
-            for (ListItem item : items) {
-                if (itemCount >= maxItems) break;
+    // The view checks the params of the measured text against its own when it is measured and
+    // throws if they differ. A card that has been laid out is checked here. If its params
+    // changed they are taken for the text measured from now on, and the text measured with the
+    // old ones is dropped. A card that has not been laid out yet resolves the same params as the
+    // other cards once it is.
+    private boolean paramsMatch(NoteViewHolder holder) {
+        if (!(holder.titleTextView instanceof AppCompatTextView)
+                || !(holder.contentTextView instanceof AppCompatTextView)) return false;
+        if (!ViewCompat.isLaidOut(holder.titleTextView)) return true;
+        PrecomputedTextCompat.Params title = TextViewCompat.getTextMetricsParams(holder.titleTextView);
+        PrecomputedTextCompat.Params preview = TextViewCompat.getTextMetricsParams(holder.contentTextView);
+        if (title.equals(titleParams) && preview.equals(previewParams)) return true;
+        titleParams = title;
+        previewParams = preview;
+        textCache.clear();
+        return false;
+    }
 
-                String text = item.getText();
-                if (text != null && !text.trim().isEmpty()) {
-                    if (itemCount > 0) {
-                        preview.append("\n");
-                    }
+    // The future is only waited for when the view is measured, by then a prefetched
+    // item is usually done
+    private static void setTextFuture(TextView view, Future<PrecomputedTextCompat> precomputed) {
+        ((AppCompatTextView) view).setTextFuture(precomputed);
+    }
 
-                    // Add checkbox symbol
-                    String checkbox = item.isChecked() ? "☑ " : "☐ ";
-                    preview.append(checkbox).append(text.trim());
-                    itemCount++;
-                }
-            }
+    private static void setText(TextView view, CharSequence text) {
+        clearTextFuture(view);
+        view.setText(text);
+    }
 
-            // Add indicator if there are more items
-            if (items.size() > maxItems) {
-                preview.append("\n... and ").append(items.size() - maxItems).append(" more");
-            }
+    // Drops a future the view has not waited for yet, so it cannot be waited for after its
+    // entry lets it be cancelled
+    private static void clearTextFuture(TextView view) {
+        if (view instanceof AppCompatTextView) ((AppCompatTextView) view).setTextFuture(null);
+    }
 
-            return preview.length() > 0 ? preview.toString() : "Empty list";
+    @Override
+    public void onViewRecycled(@NonNull NoteViewHolder holder) {
+        if (holder.boundText == null) return;
+        clearTextFuture(holder.titleTextView);
+        clearTextFuture(holder.contentTextView);
+        textCache.unbind(holder.boundText);
+        holder.boundText = null;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "List preview unavailable";
+    private void maybeLoadMore(int position) {
+        List<NoteSummary> notes = differ.getCurrentList();
+        if (!hasMore || loadingMore || loadMoreListener == null || notes.isEmpty()) return;
+        if (position >= notes.size() - LOAD_MORE_THRESHOLD) {
+            loadingMore = true;
+            // Notify outside of the bind pass, the listener will change the adapter contents
+            mainHandler.post(() -> loadMoreListener.onLoadMore());
         }
     }
 
     @Override
     public int getItemCount() {
-        return notes.size();
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
     }
 
-    public void updateNotes(List<Note> newNotes) {
-        this.notes = newNotes;
-        notifyDataSetChanged();
+    // The submitted list must not be modified afterwards. What is shown catches up with it once
+    // the diff has run in the background, so the caller keeps it to derive the next list from.
+    public void updateNotes(List<NoteSummary> newNotes) {
+        differ.submitList(newNotes);
     }
 
     static class NoteViewHolder extends RecyclerView.ViewHolder {
         CardView cardView;
         TextView titleTextView, contentTextView, dateTextView;
         ImageView favoriteImageView, typeImageView;
+        ColorStateList defaultBackground;
+        // Text cache entry shown, its measuring is not cancelled while it is bound here
+        NoteTextCache.Entry boundText;
 
         NoteViewHolder(@NonNull View itemView) {
             super(itemView);
             cardView = itemView.findViewById(R.id.cardView);
+            defaultBackground = cardView.getCardBackgroundColor();
             titleTextView = itemView.findViewById(R.id.titleTextView);
             contentTextView = itemView.findViewById(R.id.contentTextView);
             dateTextView = itemView.findViewById(R.id.dateTextView);
@@ -1,26 +1,222 @@
 package com.example.noteapp.database;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import com.example.noteapp.model.ListItem;
 import com.example.noteapp.model.Note;
+import com.example.noteapp.model.NoteFts;
+import java.util.ArrayList;
+import java.util.List;
 
-@Database(entities = {Note.class}, version = 1, exportSchema = false)
+@Database(entities = {Note.class, NoteFts.class, ListItem.class}, version = 6, exportSchema = false)
 @TypeConverters({Converters.class})
 public abstract class AppDatabase extends RoomDatabase {
-    private static AppDatabase instance;
+    // Published once and then read without locking, see getInstance()
+    private static volatile AppDatabase instance;
+    private static DatabaseConfig config = new DatabaseConfig();
 
     public abstract NoteDao noteDao();
 
-    public static synchronized AppDatabase getInstance(Context context) {
-        if (instance == null) {
-            instance = Room.databaseBuilder(context.getApplicationContext(),
-                            AppDatabase.class, "notes_database")
-                    .fallbackToDestructiveMigration()
-                    .build();
+    public abstract ListItemDao listItemDao();
+
+    // Version 2 adds the preview column and fills it in for existing notes
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notes ADD COLUMN preview TEXT");
+            try (Cursor cursor = db.query("SELECT id, content, isList FROM notes")) {
+                while (cursor.moveToNext()) {
+                    int id = cursor.getInt(0);
+                    String content = cursor.isNull(1) ? null : cursor.getString(1);
+                    boolean isList = cursor.getInt(2) != 0;
+                    db.execSQL("UPDATE notes SET preview = ? WHERE id = ?",
+                            new Object[]{NotePreviewBuilder.build(content, isList), id});
+                }
+            }
+        }
+    };
+
+    // Version 3 adds the notes_fts full-text index and indexes the existing notes
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `notes_fts` " +
+                    "USING FTS4(`title` TEXT, `body` TEXT, tokenize=unicode61)");
+            try (Cursor cursor = db.query("SELECT id, title, content, isList FROM notes")) {
+                while (cursor.moveToNext()) {
+                    int id = cursor.getInt(0);
+                    String title = cursor.isNull(1) ? null : cursor.getString(1);
+                    String content = cursor.isNull(2) ? null : cursor.getString(2);
+                    boolean isList = cursor.getInt(3) != 0;
+                    db.execSQL("INSERT INTO notes_fts(rowid, title, body) VALUES (?, ?, ?)",
+                            new Object[]{id, title, NoteSearch.searchableText(content, isList)});
+                }
+            }
+        }
+    };
+
+    // Version 4 moves the items of list notes from JSON in notes.content to the list_items table
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `list_items` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`noteId` INTEGER NOT NULL, `position` INTEGER NOT NULL, " +
+                    "`text` TEXT, `isChecked` INTEGER NOT NULL, " +
+                    "FOREIGN KEY(`noteId`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_list_items_noteId_position` " +
+                    "ON `list_items` (`noteId`, `position`)");
+
+            try (Cursor cursor = db.query("SELECT id, content FROM notes WHERE isList = 1")) {
+                while (cursor.moveToNext()) {
+                    int noteId = cursor.getInt(0);
+                    if (cursor.isNull(1)) continue;
+
+                    List<ListItem> items;
+                    try {
+                        items = ListItemJson.fromJson(cursor.getString(1));
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        continue;
+                    }
+                    if (items == null) continue;
+
+                    for (int position = 0; position < items.size(); position++) {
+                        ListItem item = items.get(position);
+                        db.execSQL("INSERT INTO list_items(noteId, position, text, isChecked) " +
+                                        "VALUES (?, ?, ?, ?)",
+                                new Object[]{noteId, position, item.getText(), item.isChecked() ? 1 : 0});
+                    }
+                }
+            }
+            db.execSQL("UPDATE notes SET content = NULL WHERE isList = 1");
+        }
+    };
+
+    // Version 5 indexes the list sort order so loading a page no longer sorts the whole table
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_isFavorite_dateModified` " +
+                    "ON `notes` (`isFavorite`, `dateModified`)");
+        }
+    };
+
+    // Version 6 stores large note content compressed, see NoteContentCodec
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notes ADD COLUMN compressedContent BLOB");
+
+            // Ids first, the rows are rewritten one at a time below
+            List<Integer> ids = new ArrayList<>();
+            try (Cursor cursor = db.query("SELECT id FROM notes WHERE length(content) >= ?",
+                    new Object[]{NoteContentCodec.COMPRESS_THRESHOLD_CHARS})) {
+                while (cursor.moveToNext()) {
+                    ids.add(cursor.getInt(0));
+                }
+            }
+            for (int id : ids) {
+                byte[] compressed;
+                try (Cursor cursor = db.query("SELECT content FROM notes WHERE id = ?", new Object[]{id})) {
+                    if (!cursor.moveToFirst()) continue;
+                    compressed = NoteContentCodec.compress(cursor.getString(0));
+                }
+                if (compressed == null) continue;
+                db.execSQL("UPDATE notes SET content = NULL, compressedContent = ? WHERE id = ?",
+                        new Object[]{compressed, id});
+            }
+        }
+    };
+
+    // Must be called before the database is first opened
+    public static void setConfig(DatabaseConfig newConfig) {
+        synchronized (AppDatabase.class) {
+            if (instance != null) {
+                throw new IllegalStateException("The database is already open");
+            }
+            config = newConfig;
+        }
+    }
+
+    public static AppDatabase getInstance(Context context) {
+        AppDatabase result = instance;
+        if (result != null) {
+            return result;
+        }
+        synchronized (AppDatabase.class) {
+            if (instance == null) {
+                instance = build(context);
+            }
+            return instance;
+        }
+    }
+
+    // Building is cheap, the database file is only opened and validated on first use
+    private static AppDatabase build(Context context) {
+        DatabaseConfig openConfig = config;
+        return Room.databaseBuilder(context.getApplicationContext(),
+                        AppDatabase.class, "notes_database")
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6)
+                .setJournalMode(openConfig.isWriteAheadLogging()
+                        ? JournalMode.WRITE_AHEAD_LOGGING : JournalMode.TRUNCATE)
+                .addCallback(new Callback() {
+                    @Override
+                    public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                        applyConfig(db, openConfig);
+                    }
+                })
+                .build();
+    }
+
+    // Pragmas are per connection. With WAL the framework keeps one primary connection, which
+    // runs every transaction and so every write, and read-only connections for the other reads.
+    // A pragma is a read-only statement to the framework, run on its own it may go to any of
+    // them, so each one is pinned where it matters:
+    // - From API 30 synchronous and cache_size are set on every connection, open or opened
+    //   later. Pragmas that return a row cannot be run that way.
+    // - The others run in a transaction, which holds the primary connection. So below API 30
+    //   cache_size, and mmap_size on all versions, only apply to writes.
+    // - synchronous cannot be changed inside a transaction, below API 30 it is run on its own and
+    //   may land on a read-only connection, where it has no effect. Writes then keep the
+    //   framework default, which is NORMAL or FULL depending on the device.
+    private static void applyConfig(SupportSQLiteDatabase db, DatabaseConfig config) {
+        String synchronous = "PRAGMA synchronous = " + config.getSynchronous().name();
+        // A negative cache_size is in KiB instead of pages
+        String cacheSize = "PRAGMA cache_size = -" + config.getCacheSizeKb();
+        boolean perConnection = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+        if (perConnection) {
+            db.execPerConnectionSQL(synchronous, null);
+            db.execPerConnectionSQL(cacheSize, null);
+        } else {
+            pragma(db, synchronous);
+        }
+
+        db.beginTransaction();
+        try {
+            if (!perConnection) pragma(db, cacheSize);
+            pragma(db, "PRAGMA mmap_size = " + config.getMmapSizeBytes());
+            if (config.isWriteAheadLogging()) {
+                pragma(db, "PRAGMA wal_autocheckpoint = " + config.getWalAutoCheckpointPages());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Some pragmas return a row, so they are run as queries
+    private static void pragma(SupportSQLiteDatabase db, String pragma) {
+        try (Cursor cursor = db.query(pragma)) {
+            cursor.moveToFirst();
         }
-        return instance;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package com.example.noteapp.database;
+
+// Storage settings applied when AppDatabase is opened, see AppDatabase.setConfig().
+// The defaults suit the app: WAL with synchronous NORMAL never corrupts the database,
+// a crash can only lose the last transactions that were not yet checkpointed.
+public class DatabaseConfig {
+    public enum Synchronous { OFF, NORMAL, FULL, EXTRA }
+
+    private boolean writeAheadLogging = true;
+    private Synchronous synchronous = Synchronous.NORMAL;
+    private int cacheSizeKb = 2048;
+    private long mmapSizeBytes = 0;
+    private int walAutoCheckpointPages = 1000;
+
+    public boolean isWriteAheadLogging() { return writeAheadLogging; }
+
+    // WAL lets reads run while a write is in progress, otherwise a rollback journal is used
+    public DatabaseConfig setWriteAheadLogging(boolean writeAheadLogging) {
+        this.writeAheadLogging = writeAheadLogging;
+        return this;
+    }
+
+    public Synchronous getSynchronous() { return synchronous; }
+
+    // Only sure to reach the connection that writes from API 30, see AppDatabase.applyConfig()
+    public DatabaseConfig setSynchronous(Synchronous synchronous) {
+        this.synchronous = synchronous;
+        return this;
+    }
+
+    public int getCacheSizeKb() { return cacheSizeKb; }
+
+    // Page cache per connection. Before API 30 only the connection that writes gets it,
+    // see AppDatabase.applyConfig().
+    public DatabaseConfig setCacheSizeKb(int cacheSizeKb) {
+        this.cacheSizeKb = cacheSizeKb;
+        return this;
+    }
+
+    public long getMmapSizeBytes() { return mmapSizeBytes; }
+
+    // 0 disables memory-mapped reads. Only applied to the connection that writes, so it does
+    // not speed up the list queries, see AppDatabase.applyConfig().
+    public DatabaseConfig setMmapSizeBytes(long mmapSizeBytes) {
+        this.mmapSizeBytes = mmapSizeBytes;
+        return this;
+    }
+
+    public int getWalAutoCheckpointPages() { return walAutoCheckpointPages; }
+
+    // The WAL file is copied back into the database once it grows past this many pages,
+    // 0 turns automatic checkpoints off. Only used with write-ahead logging.
+    public DatabaseConfig setWalAutoCheckpointPages(int walAutoCheckpointPages) {
+        this.walAutoCheckpointPages = walAutoCheckpointPages;
+        return this;
+    }
+}
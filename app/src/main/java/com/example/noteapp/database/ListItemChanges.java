@@ -0,0 +1,130 @@
+package com.example.noteapp.database;
+
+import com.example.noteapp.model.ListItem;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Journal of the item edits of one list note since its last save, so a save only writes
+// the rows that changed. Every item is recorded in at most one group: new items are inserted
+// whole, edited items are updated whole and items that only moved get their position written.
+// Items are compared by identity.
+public class ListItemChanges {
+    private final Set<ListItem> added = new LinkedHashSet<>();
+    private final Set<ListItem> changed = new HashSet<>();
+    private final Set<ListItem> moved = new HashSet<>();
+    private final List<ListItem> deleted = new ArrayList<>();
+
+    public void itemAdded(ListItem item) {
+        added.add(item);
+    }
+
+    public void itemChanged(ListItem item) {
+        if (added.contains(item)) return;
+        moved.remove(item);
+        changed.add(item);
+    }
+
+    public void itemMoved(ListItem item) {
+        if (added.contains(item) || changed.contains(item)) return;
+        moved.add(item);
+    }
+
+    public void itemDeleted(ListItem item) {
+        // An item that was never written needs no delete
+        if (added.remove(item)) return;
+        changed.remove(item);
+        moved.remove(item);
+        deleted.add(item);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && moved.isEmpty() && deleted.isEmpty();
+    }
+
+    // Returns the recorded changes and starts a new journal
+    public ListItemChanges take() {
+        ListItemChanges taken = new ListItemChanges();
+        taken.addAll(this);
+        clear();
+        return taken;
+    }
+
+    // Puts back changes returned by take() whose write failed, later edits take precedence
+    public void restore(ListItemChanges failed) {
+        ListItemChanges later = new ListItemChanges();
+        later.addAll(this);
+        clear();
+        addAll(failed);
+        for (ListItem item : later.added) itemAdded(item);
+        for (ListItem item : later.changed) itemChanged(item);
+        for (ListItem item : later.moved) itemMoved(item);
+        for (ListItem item : later.deleted) itemDeleted(item);
+    }
+
+    // The same changes on copies of the items, for a write on another thread while the
+    // originals keep being edited. copies holds a copy of each of items at the same index,
+    // deleted items are copied here.
+    public ListItemChanges snapshot(List<ListItem> items, List<ListItem> copies) {
+        Map<ListItem, ListItem> copyOf = new IdentityHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            ListItem item = items.get(i);
+            if (added.contains(item) || changed.contains(item) || moved.contains(item)) {
+                copyOf.put(item, copies.get(i));
+            }
+        }
+
+        ListItemChanges snapshot = new ListItemChanges();
+        for (ListItem item : added) snapshot.added.add(copyOf.get(item));
+        for (ListItem item : changed) snapshot.changed.add(copyOf.get(item));
+        for (ListItem item : moved) snapshot.moved.add(copyOf.get(item));
+        for (ListItem item : deleted) snapshot.deleted.add(new ListItem(item));
+        return snapshot;
+    }
+
+    // After a snapshot of these changes was written, gives the added items the ids
+    // the write handed out to their copies
+    public void applyIds(ListItemChanges written) {
+        Iterator<ListItem> copies = written.added.iterator();
+        for (ListItem item : added) {
+            ListItem copy = copies.next();
+            item.setId(copy.getId());
+            item.setNoteId(copy.getNoteId());
+        }
+    }
+
+    public void clear() {
+        added.clear();
+        changed.clear();
+        moved.clear();
+        deleted.clear();
+    }
+
+    Set<ListItem> getAdded() {
+        return added;
+    }
+
+    Set<ListItem> getChanged() {
+        return changed;
+    }
+
+    Set<ListItem> getMoved() {
+        return moved;
+    }
+
+    List<ListItem> getDeleted() {
+        return deleted;
+    }
+
+    private void addAll(ListItemChanges other) {
+        added.addAll(other.added);
+        changed.addAll(other.changed);
+        moved.addAll(other.moved);
+        deleted.addAll(other.deleted);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.noteapp.database;
+
+import androidx.room.*;
+import com.example.noteapp.model.ListItem;
+import java.util.List;
+
+// Single-row access to the items of list notes, so editing one item never rewrites the whole list
+@Dao
+public interface ListItemDao {
+    @Query("SELECT * FROM list_items WHERE noteId = :noteId ORDER BY position")
+    List<ListItem> getItemsForNote(int noteId);
+
+    @Insert
+    long insertItem(ListItem item);
+
+    @Update
+    void updateItem(ListItem item);
+
+    @Query("DELETE FROM list_items WHERE id = :id")
+    void deleteItem(int id);
+
+    @Query("UPDATE list_items SET position = :position WHERE id = :id")
+    void setPosition(int id, int position);
+}
@@ -0,0 +1,117 @@
+package com.example.noteapp.database;
+
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.perf.Metrics;
+import com.example.noteapp.perf.PerfTrace;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+// JSON form of list note items: [{"text":"...","isChecked":false}, ...]
+// Read and written with a hand-written streaming adapter, so no reflection is involved.
+public class ListItemJson {
+    public static final Type LIST_TYPE = new TypeToken<List<ListItem>>(){}.getType();
+
+    public static final TypeAdapter<List<ListItem>> ADAPTER = new TypeAdapter<List<ListItem>>() {
+        @Override
+        public void write(JsonWriter out, List<ListItem> items) throws IOException {
+            if (items == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (ListItem item : items) {
+                writeItem(out, item);
+            }
+            out.endArray();
+        }
+
+        @Override
+        public List<ListItem> read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            List<ListItem> items = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                items.add(readItem(in));
+            }
+            in.endArray();
+            return items;
+        }
+    };
+
+    // Shared instance for code that needs a Gson, with the list adapter already registered
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(LIST_TYPE, ADAPTER)
+            .create();
+
+    private ListItemJson() {}
+
+    public static List<ListItem> fromJson(String json) throws IOException {
+        if (json == null || json.isEmpty()) return null;
+        long start = PerfTrace.begin("ListItemJson.fromJson");
+        try {
+            List<ListItem> items = ADAPTER.read(new JsonReader(new StringReader(json)));
+            if (items != null) Metrics.histogram("ListItemJson.fromJson.items").record(items.size());
+            return items;
+        } finally {
+            PerfTrace.end("ListItemJson.fromJson", start);
+        }
+    }
+
+    public static String toJson(List<ListItem> items) {
+        StringWriter writer = new StringWriter();
+        try {
+            ADAPTER.write(new JsonWriter(writer), items);
+        } catch (IOException e) {
+            // StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    public static void writeItem(JsonWriter out, ListItem item) throws IOException {
+        out.beginObject();
+        out.name("text");
+        out.value(item.getText());
+        out.name("isChecked");
+        out.value(item.isChecked());
+        out.endObject();
+    }
+
+    public static ListItem readItem(JsonReader in) throws IOException {
+        ListItem item = new ListItem();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "text":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        item.setText(in.nextString());
+                    }
+                    break;
+                case "isChecked":
+                    item.setChecked(in.nextBoolean());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return item;
+    }
+}
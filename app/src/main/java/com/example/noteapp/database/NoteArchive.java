@@ -0,0 +1,241 @@
+package com.example.noteapp.database;
+
+import android.database.Cursor;
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.model.Note;
+import com.example.noteapp.perf.PerfTrace;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Streaming backup of all notes as NDJSON, one note per line:
+// {"title":..,"content":..,"isFavorite":..,"isList":..,"dateCreated":..,"dateModified":..,"items":[..]}
+// Notes are read through cursors in batches and written one at a time, and imports are committed in
+// batches, so memory use does not grow with the number of notes. List items are copied
+// between the database and the stream one item at a time.
+public class NoteArchive {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int EXPORT_BATCH_SIZE = 200;
+    private static final int IMPORT_BATCH_SIZE = 200;
+
+    private final AppDatabase database;
+    private final NoteDao noteDao;
+    private final ListItemDao listItemDao;
+
+    public NoteArchive(AppDatabase database) {
+        this.database = database;
+        this.noteDao = database.noteDao();
+        this.listItemDao = database.listItemDao();
+    }
+
+    // Writes every note to the channel and closes it, returns the number of notes written.
+    // Notes are read in batches by id, each batch is a short query of its own so the cursor
+    // window never holds more than one batch and writers are not held off for the whole export.
+    // A note saved during the export is written as it was when its batch was read.
+    public int exportNotes(WritableByteChannel channel) throws IOException {
+        int count = 0;
+        try (Writer writer = new BufferedWriter(
+                Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE)) {
+            JsonWriter out = new JsonWriter(writer);
+            out.setLenient(true); // one top-level value per line
+
+            int lastId = 0;
+            while (true) {
+                int written = 0;
+                try (Cursor cursor = noteDao.getNotesCursorAfter(lastId, EXPORT_BATCH_SIZE)) {
+                    int idColumn = cursor.getColumnIndexOrThrow("id");
+                    while (cursor.moveToNext()) {
+                        lastId = cursor.getInt(idColumn);
+                        writeNote(out, cursor);
+                        writer.write('\n');
+                        written++;
+                    }
+                }
+                count += written;
+                if (written < EXPORT_BATCH_SIZE) break;
+            }
+        }
+        return count;
+    }
+
+    private void writeNote(JsonWriter out, Cursor cursor) throws IOException {
+        int compressedColumn = cursor.getColumnIndexOrThrow("compressedContent");
+        int createdColumn = cursor.getColumnIndexOrThrow("dateCreated");
+        int modifiedColumn = cursor.getColumnIndexOrThrow("dateModified");
+        boolean isList = cursor.getInt(cursor.getColumnIndexOrThrow("isList")) != 0;
+
+        out.beginObject();
+        out.name("title").value(cursor.getString(cursor.getColumnIndexOrThrow("title")));
+        // The archive always holds plain text
+        out.name("content").value(cursor.isNull(compressedColumn)
+                ? cursor.getString(cursor.getColumnIndexOrThrow("content"))
+                : NoteContentCodec.decompress(cursor.getBlob(compressedColumn)));
+        out.name("isFavorite").value(cursor.getInt(cursor.getColumnIndexOrThrow("isFavorite")) != 0);
+        out.name("isList").value(isList);
+        if (!cursor.isNull(createdColumn)) {
+            out.name("dateCreated").value(cursor.getLong(createdColumn));
+        }
+        if (!cursor.isNull(modifiedColumn)) {
+            out.name("dateModified").value(cursor.getLong(modifiedColumn));
+        }
+        // Items go last, so an importer knows the whole note before they arrive
+        if (isList) {
+            out.name("items");
+            writeItems(out, cursor.getInt(cursor.getColumnIndexOrThrow("id")));
+        }
+        out.endObject();
+    }
+
+    private void writeItems(JsonWriter out, int noteId) throws IOException {
+        ListItem item = new ListItem();
+        out.beginArray();
+        try (Cursor cursor = noteDao.getListItemsCursor(noteId)) {
+            while (cursor.moveToNext()) {
+                item.setText(cursor.getString(0));
+                item.setChecked(cursor.getInt(1) != 0);
+                ListItemJson.writeItem(out, item);
+            }
+        }
+        out.endArray();
+    }
+
+    // Reads notes from the channel and closes it, returns the number of notes imported.
+    // Notes are added next to the existing ones and get new ids.
+    public int importNotes(ReadableByteChannel channel) throws IOException {
+        int count = 0;
+        try (Reader reader = new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE)) {
+            JsonReader in = new JsonReader(reader);
+            in.setLenient(true); // one top-level value per line
+
+            while (true) {
+                int imported = database.runInTransaction(() -> importBatch(in));
+                count += imported;
+                if (imported < IMPORT_BATCH_SIZE) break;
+            }
+        }
+        return count;
+    }
+
+    // Text notes are collected and inserted together with insertNotes. They are flushed before
+    // each list note, so notes keep the order of the archive.
+    private int importBatch(JsonReader in) throws IOException {
+        List<Note> pending = new ArrayList<>();
+        int count = 0;
+        while (count < IMPORT_BATCH_SIZE && in.peek() != JsonToken.END_DOCUMENT) {
+            long start = PerfTrace.begin("NoteArchive.importNote");
+            importNote(in, pending);
+            PerfTrace.end("NoteArchive.importNote", start);
+            count++;
+        }
+        insertPending(pending);
+        return count;
+    }
+
+    private void insertPending(List<Note> pending) {
+        if (pending.isEmpty()) return;
+        noteDao.insertNotes(pending);
+        pending.clear();
+    }
+
+    private void importNote(JsonReader in, List<Note> pending) throws IOException {
+        Note note = new Note();
+        boolean inserted = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "title":
+                    note.setTitle(nextStringOrNull(in));
+                    break;
+                case "content":
+                    note.setContent(nextStringOrNull(in));
+                    break;
+                case "isFavorite":
+                    note.setFavorite(in.nextBoolean());
+                    break;
+                case "isList":
+                    note.setList(in.nextBoolean());
+                    break;
+                case "dateCreated":
+                    note.setDateCreated(new Date(in.nextLong()));
+                    break;
+                case "dateModified":
+                    note.setDateModified(new Date(in.nextLong()));
+                    break;
+                case "items":
+                    if (note.isList() && !inserted) {
+                        insertPending(pending);
+                        importListNote(in, note);
+                        inserted = true;
+                    } else {
+                        in.skipValue();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if (!inserted) {
+            pending.add(note);
+        }
+    }
+
+    // Inserts the note, then its items as they are read. Only the items needed for the
+    // preview are kept in memory.
+    private void importListNote(JsonReader in, Note note) throws IOException {
+        note.setContent(null);
+        int noteId = (int) noteDao.insertNoteRow(note);
+
+        List<ListItem> previewItems = new ArrayList<>();
+        int nonEmptyCount = 0;
+        StringBuilder searchText = new StringBuilder();
+        int position = 0;
+
+        in.beginArray();
+        while (in.hasNext()) {
+            ListItem item = ListItemJson.readItem(in);
+            item.setNoteId(noteId);
+            item.setPosition(position++);
+            listItemDao.insertItem(item);
+
+            String text = item.getText();
+            boolean isEmpty = text == null || text.trim().isEmpty();
+            if (nonEmptyCount < NotePreviewBuilder.MAX_LIST_ITEMS) {
+                previewItems.add(item);
+                if (!isEmpty) nonEmptyCount++;
+            }
+            if (text != null && !text.isEmpty()) {
+                if (searchText.length() > 0) searchText.append('\n');
+                searchText.append(text);
+            }
+        }
+        in.endArray();
+
+        noteDao.setPreview(noteId, NotePreviewBuilder.buildList(previewItems, position));
+        noteDao.insertFtsRow(noteId, note.getTitle(), searchText.toString());
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
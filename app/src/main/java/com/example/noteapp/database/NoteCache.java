@@ -0,0 +1,216 @@
+package com.example.noteapp.database;
+
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.model.Note;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Process-wide LRU cache of full notes by id, bounded by the number of notes and by their
+// total text length. It holds a few dozen notes, so a plain HashMap is enough, and keeps the
+// class testable on the JVM.
+// The items of a list note are kept next to it once they were read or written.
+// Notes and items are copied in and out, editing them never changes the cached ones before
+// they are saved.
+// Filled by NoteRepository when notes are read and kept current when they are written.
+class NoteCache {
+    static final int DEFAULT_MAX_NOTES = 64;
+    // About 4 MB of text
+    static final long DEFAULT_MAX_CHARS = 2 * 1024 * 1024;
+    // Rough fixed cost of a cached note besides its text
+    private static final int ENTRY_OVERHEAD_CHARS = 64;
+
+    private static class Entry {
+        Note note;
+        // Null until the items of a list note are read or written
+        List<ListItem> items;
+        long weight;
+        Entry newer;
+        Entry older;
+    }
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final int maxNotes;
+    private final long maxChars;
+    // Most and least recently used entries
+    private Entry newest;
+    private Entry oldest;
+    private long totalChars;
+    // Bumped by every write, a read only fills the cache if no write happened meanwhile
+    private long writeVersion;
+
+    NoteCache(int maxNotes, long maxChars) {
+        this.maxNotes = maxNotes;
+        this.maxChars = maxChars;
+    }
+
+    synchronized Note get(int id) {
+        Entry entry = entries.get(id);
+        if (entry == null) return null;
+        moveToNewest(entry);
+        return new Note(entry.note);
+    }
+
+    // Copies of the items of a cached list note, or null if they are not cached
+    synchronized List<ListItem> getItems(int id) {
+        Entry entry = entries.get(id);
+        if (entry == null || entry.items == null) return null;
+        moveToNewest(entry);
+        return copyOf(entry.items);
+    }
+
+    // Whether the note is cached, with its items if it is a list note
+    synchronized boolean contains(int id) {
+        Entry entry = entries.get(id);
+        return entry != null && (!entry.note.isList() || entry.items != null);
+    }
+
+    synchronized long getWriteVersion() {
+        return writeVersion;
+    }
+
+    // For a note read from the database when getWriteVersion() returned version.
+    // A write since then may have made it stale, it is dropped in that case.
+    synchronized void putRead(Note note, long version) {
+        if (note == null || version != writeVersion) return;
+        store(note);
+    }
+
+    // For the items of a note read from the database when getWriteVersion() returned version.
+    // They are only kept while the note itself is cached.
+    synchronized void putItemsRead(int id, List<ListItem> items, long version) {
+        if (items == null || version != writeVersion) return;
+        Entry entry = entries.get(id);
+        if (entry == null) return;
+        store(entry.note, items);
+    }
+
+    // For a note that was just written, cached items are kept as they do not change
+    synchronized void putWritten(Note note) {
+        writeVersion++;
+        store(note);
+    }
+
+    // For a list note that was just written with all of its items
+    synchronized void putWritten(Note note, List<ListItem> items) {
+        writeVersion++;
+        store(note, items);
+    }
+
+    // For a write of the title, favorite flag and dateModified only. The cached content and
+    // items are the ones last written, a caller's copy of the note may hold older ones.
+    synchronized void updateMetadata(int id, String title, boolean isFavorite, Date dateModified) {
+        writeVersion++;
+        Entry entry = entries.get(id);
+        if (entry == null) return;
+        entry.note.setTitle(title);
+        entry.note.setFavorite(isFavorite);
+        entry.note.setDateModified(dateModified);
+        totalChars -= entry.weight;
+        entry.weight = weightOf(entry.note, entry.items);
+        totalChars += entry.weight;
+        moveToNewest(entry);
+        trim();
+    }
+
+    synchronized void setFavorite(int id, boolean isFavorite) {
+        writeVersion++;
+        Entry entry = entries.get(id);
+        if (entry != null) entry.note.setFavorite(isFavorite);
+    }
+
+    synchronized void remove(int id) {
+        writeVersion++;
+        Entry entry = entries.get(id);
+        if (entry != null) removeEntry(entry);
+    }
+
+    synchronized void clear() {
+        writeVersion++;
+        entries.clear();
+        newest = null;
+        oldest = null;
+        totalChars = 0;
+    }
+
+    private void store(Note note) {
+        Entry existing = entries.get(note.getId());
+        store(note, existing != null ? existing.items : null);
+    }
+
+    private void store(Note note, List<ListItem> items) {
+        Entry existing = entries.get(note.getId());
+        if (existing != null) removeEntry(existing);
+
+        long weight = weightOf(note, items);
+        // A note this large would push out everything else
+        if (weight > maxChars / 2) return;
+
+        Entry entry = new Entry();
+        entry.note = new Note(note);
+        entry.items = items != null ? copyOf(items) : null;
+        entry.weight = weight;
+        entries.put(note.getId(), entry);
+        linkAsNewest(entry);
+        totalChars += weight;
+        trim();
+    }
+
+    private void trim() {
+        while (oldest != null && (entries.size() > maxNotes || totalChars > maxChars)) {
+            removeEntry(oldest);
+        }
+    }
+
+    private static long weightOf(Note note, List<ListItem> items) {
+        long weight = ENTRY_OVERHEAD_CHARS + length(note.getTitle()) + length(note.getContent())
+                + length(note.getPreview());
+        if (items != null) {
+            for (ListItem item : items) {
+                weight += ENTRY_OVERHEAD_CHARS + length(item.getText());
+            }
+        }
+        return weight;
+    }
+
+    private static List<ListItem> copyOf(List<ListItem> items) {
+        List<ListItem> copies = new ArrayList<>(items.size());
+        for (ListItem item : items) copies.add(new ListItem(item));
+        return copies;
+    }
+
+    private static int length(String text) {
+        return text != null ? text.length() : 0;
+    }
+
+    private void removeEntry(Entry entry) {
+        entries.remove(entry.note.getId());
+        unlink(entry);
+        totalChars -= entry.weight;
+    }
+
+    private void moveToNewest(Entry entry) {
+        if (entry == newest) return;
+        unlink(entry);
+        linkAsNewest(entry);
+    }
+
+    private void linkAsNewest(Entry entry) {
+        entry.older = newest;
+        entry.newer = null;
+        if (newest != null) newest.newer = entry;
+        newest = entry;
+        if (oldest == null) oldest = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.newer != null) entry.newer.older = entry.older;
+        else newest = entry.older;
+        if (entry.older != null) entry.older.newer = entry.newer;
+        else oldest = entry.newer;
+        entry.newer = null;
+        entry.older = null;
+    }
+}
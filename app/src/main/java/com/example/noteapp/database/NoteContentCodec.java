@@ -0,0 +1,140 @@
+package com.example.noteapp.database;
+
+import com.example.noteapp.model.Note;
+import com.example.noteapp.perf.PerfTrace;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Storage encoding of large note bodies. Content of at least COMPRESS_THRESHOLD_CHARS is kept
+// deflated in the compressedContent column (with content NULL) when that is smaller.
+// Format: one version byte, the length of the UTF-8 text as a 4 byte big-endian int,
+// then the zlib stream of the UTF-8 text.
+// notes_fts keeps its own plain copy of the body, so this shrinks the notes table and full-row
+// reads, not the whole file (see NoteStorageBenchmark).
+// Only called from NoteDao and the migrations, which never run on the main thread.
+public final class NoteContentCodec {
+    static final int COMPRESS_THRESHOLD_CHARS = 2048;
+
+    private static final byte FORMAT_DEFLATE_V1 = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // Notes are saved often while typing, the fastest level already gets most of the gain on text
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    private static final int POOL_SIZE = 4;
+    // Deflate cannot expand data by more than about 1032 times, a larger length in the header
+    // is corrupt and must not be allocated
+    private static final int MAX_EXPANSION = 1032;
+
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private NoteContentCodec() {}
+
+    // The note as it should be written. A note whose content is compressed is returned as a
+    // copy, the caller's note keeps its plain content.
+    public static Note encode(Note note) {
+        String content = note.getContent();
+        byte[] compressed = compress(content);
+        if (compressed == null) {
+            note.setCompressedContent(null);
+            return note;
+        }
+        Note row = new Note(note);
+        row.setContent(null);
+        row.setCompressedContent(compressed);
+        return row;
+    }
+
+    // Restores the plain content of a note read from the database, in place
+    public static Note decode(Note note) {
+        if (note != null && note.getCompressedContent() != null) {
+            note.setContent(decompress(note.getCompressedContent()));
+            note.setCompressedContent(null);
+        }
+        return note;
+    }
+
+    public static List<Note> decodeAll(List<Note> notes) {
+        for (Note note : notes) {
+            decode(note);
+        }
+        return notes;
+    }
+
+    // Encoded text, or null if it is short or does not get smaller
+    public static byte[] compress(String text) {
+        if (text == null || text.length() < COMPRESS_THRESHOLD_CHARS) return null;
+
+        long start = PerfTrace.begin("NoteContentCodec.compress");
+        byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) deflater = new Deflater(COMPRESSION_LEVEL);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 3 + HEADER_SIZE);
+            out.write(FORMAT_DEFLATE_V1);
+            out.write(input.length >>> 24);
+            out.write(input.length >>> 16);
+            out.write(input.length >>> 8);
+            out.write(input.length);
+
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+                // Not worth it, keep the text as it is
+                if (out.size() >= input.length) return null;
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) deflater.end();
+            PerfTrace.end("NoteContentCodec.compress", start);
+        }
+    }
+
+    public static String decompress(byte[] data) {
+        if (data.length < HEADER_SIZE || data[0] != FORMAT_DEFLATE_V1) {
+            throw new IllegalArgumentException("Unknown note content format");
+        }
+
+        int length = ((data[1] & 0xff) << 24) | ((data[2] & 0xff) << 16)
+                | ((data[3] & 0xff) << 8) | (data[4] & 0xff);
+        if (length < 0 || length > (long) (data.length - HEADER_SIZE) * MAX_EXPANSION) {
+            throw new IllegalArgumentException("Corrupt note content length " + length);
+        }
+
+        long start = PerfTrace.begin("NoteContentCodec.decompress");
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            // One spare byte shows a stream longer than the header says. The stream has to be
+            // read to its end, only then is its checksum verified.
+            byte[] output = new byte[length + 1];
+            int offset = 0;
+            while (offset <= length && !inflater.finished()) {
+                int count = inflater.inflate(output, offset, output.length - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                offset += count;
+            }
+            if (offset != length || !inflater.finished()) {
+                throw new IllegalArgumentException("Truncated note content");
+            }
+            return new String(output, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt note content", e);
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) inflater.end();
+            PerfTrace.end("NoteContentCodec.decompress", start);
+        }
+    }
+}
@@ -1,30 +1,267 @@
 package com.example.noteapp.database;
 
+import android.database.Cursor;
 import androidx.room.*;
+import com.example.noteapp.model.ListItem;
 import com.example.noteapp.model.Note;
+import com.example.noteapp.model.NoteSearchMatch;
+import com.example.noteapp.model.NoteSearchResult;
+import com.example.noteapp.model.NoteSummary;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
+// Writes should be made through NoteRepository, not by calling these methods directly: the note
+// list reloads when NoteRepository tells its notes observers about a write. A write made here
+// directly is only picked up by the repository's InvalidationTracker backstop, which reloads
+// the list after the commit and cannot tell an optimistic write from any other.
 @Dao
 public interface NoteDao {
+    // Older SQLite versions allow at most 999 bound variables per statement
+    int MAX_IDS_PER_STATEMENT = 900;
+
+    // Full notes are read through the default methods, which decode compressed content
+    default List<Note> getAllNotes() {
+        return NoteContentCodec.decodeAll(getAllNoteRows());
+    }
+
+    default List<Note> getFavoriteNotes() {
+        return NoteContentCodec.decodeAll(getFavoriteNoteRows());
+    }
+
+    default Note getNoteById(int id) {
+        return NoteContentCodec.decode(getNoteRow(id));
+    }
+
     // Modified query to show favorites first, then regular notes
     @Query("SELECT * FROM notes ORDER BY isFavorite DESC, dateModified DESC")
-    List<Note> getAllNotes();
+    List<Note> getAllNoteRows();
 
     @Query("SELECT * FROM notes WHERE isFavorite = 1 ORDER BY dateModified DESC")
-    List<Note> getFavoriteNotes();
+    List<Note> getFavoriteNoteRows();
+
+    // The list screen reads only the summary columns, it never needs the full content.
+    // The list queries are also checked for their query plans by NoteQueryPlanTest.
+    String SUMMARY_QUERY = "SELECT id, title, preview, isFavorite, isList, dateModified FROM notes ";
+
+    String NOTES_FIRST_PAGE_QUERY = SUMMARY_QUERY +
+            "ORDER BY isFavorite DESC, dateModified DESC, id DESC LIMIT :limit";
+
+    String GROUP_FIRST_PAGE_QUERY = SUMMARY_QUERY +
+            "WHERE isFavorite = :isFavorite ORDER BY dateModified DESC, id DESC LIMIT :limit";
+
+    String GROUP_PAGE_AFTER_QUERY = SUMMARY_QUERY +
+            "WHERE isFavorite = :isFavorite AND dateModified <= :dateModified " +
+            "AND (dateModified < :dateModified OR id < :id) " +
+            "ORDER BY dateModified DESC, id DESC LIMIT :limit";
+
+    // Keyset pagination: pages are read in (isFavorite, dateModified, id) order and each
+    // following page starts strictly after the last row of the previous one, so no rows are skipped.
+    @Query(NOTES_FIRST_PAGE_QUERY)
+    List<NoteSummary> getNotesFirstPage(int limit);
+
+    // Continues within the favorite group of the last row, then moves on to the regular notes.
+    // Each query is a range seek on the (isFavorite, dateModified) index.
+    @Transaction
+    default List<NoteSummary> getNotesPageAfter(boolean isFavorite, Date dateModified, int id, int limit) {
+        List<NoteSummary> page = getGroupPageAfter(isFavorite, dateModified, id, limit);
+        if (isFavorite && page.size() < limit) {
+            page.addAll(getGroupFirstPage(false, limit - page.size()));
+        }
+        return page;
+    }
+
+    @Query(GROUP_FIRST_PAGE_QUERY)
+    List<NoteSummary> getGroupFirstPage(boolean isFavorite, int limit);
+
+    @Query(GROUP_PAGE_AFTER_QUERY)
+    List<NoteSummary> getGroupPageAfter(boolean isFavorite, Date dateModified, int id, int limit);
+
+    default List<NoteSummary> getFavoriteNotesFirstPage(int limit) {
+        return getGroupFirstPage(true, limit);
+    }
+
+    default List<NoteSummary> getFavoriteNotesPageAfter(Date dateModified, int id, int limit) {
+        return getGroupPageAfter(true, dateModified, id, limit);
+    }
 
     @Query("SELECT * FROM notes WHERE id = :id")
-    Note getNoteById(int id);
+    Note getNoteRow(int id);
+
+    // Cursors for streaming the whole table without loading it, see NoteArchive.
+    // Notes are read in batches after the last id seen, so no cursor spans the whole table.
+    // Large content is in compressedContent, see NoteContentCodec.
+    @Query("SELECT * FROM notes WHERE id > :lastId ORDER BY id LIMIT :limit")
+    Cursor getNotesCursorAfter(int lastId, int limit);
+
+    @Query("SELECT text, isChecked FROM list_items WHERE noteId = :noteId ORDER BY position")
+    Cursor getListItemsCursor(int noteId);
+
+    // Full-text search: every match is ranked, then snippets are made for the best ones only.
+    // Ranking all matches keeps a short prefix like "a*" from returning an arbitrary subset.
+    // The search and write queries are also run by NoteDaoBenchmark.
+    String MATCHES_QUERY = "SELECT notes.id, notes.dateModified, matchinfo(notes_fts, 'pcx') AS matchInfo " +
+            "FROM notes_fts JOIN notes ON notes.id = notes_fts.rowid " +
+            "WHERE notes_fts MATCH :matchQuery";
+
+    String SEARCH_RESULTS_QUERY = "SELECT notes.id, notes.title, notes.isFavorite, notes.isList, " +
+            "notes.dateModified, snippet(notes_fts, char(2), char(3), '…', -1, 12) AS preview " +
+            "FROM notes_fts JOIN notes ON notes.id = notes_fts.rowid " +
+            "WHERE notes_fts MATCH :matchQuery AND notes_fts.rowid IN (:ids)";
+
+    String INSERT_FTS_QUERY = "INSERT INTO notes_fts(rowid, title, body) VALUES (:id, :title, :body)";
+
+    String DELETE_FTS_QUERY = "DELETE FROM notes_fts WHERE rowid = :id";
+
+    @Transaction
+    default List<NoteSearchResult> searchNotes(String matchQuery, boolean favoritesOnly, int limit) {
+        List<NoteSearchMatch> matches = favoritesOnly ? findFavoriteMatches(matchQuery) : findMatches(matchQuery);
+        List<Integer> ids = new ArrayList<>();
+        for (NoteSearchMatch match : NoteSearch.top(matches, limit)) {
+            ids.add(match.getId());
+        }
+        if (ids.isEmpty()) return new ArrayList<>();
+        return NoteSearch.inOrderOf(ids, getSearchResults(matchQuery, ids));
+    }
+
+    @Query(MATCHES_QUERY)
+    List<NoteSearchMatch> findMatches(String matchQuery);
+
+    @Query(MATCHES_QUERY + " AND notes.isFavorite = 1")
+    List<NoteSearchMatch> findFavoriteMatches(String matchQuery);
+
+    // At most MAX_IDS_PER_STATEMENT ids, results come in no particular order
+    @Query(SEARCH_RESULTS_QUERY)
+    List<NoteSearchResult> getSearchResults(String matchQuery, List<Integer> ids);
+
+    // Inserts, updates and deletes go through these so the preview column and the
+    // full-text index always match the content, and large content is stored compressed.
+    // Text notes (a list note inserted here starts without items):
+    @Transaction
+    default long insertNote(Note note) {
+        if (note.isList()) {
+            return insertListNote(note, Collections.emptyList());
+        }
+        note.setPreview(NotePreviewBuilder.build(note));
+        long id = insertNoteRow(NoteContentCodec.encode(note));
+        insertFtsRow((int) id, note.getTitle(), NoteSearch.searchableText(note));
+        return id;
+    }
+
+    // Bulk import in a single transaction, returns the generated ids in order
+    @Transaction
+    default List<Long> insertNotes(List<Note> notes) {
+        List<Long> ids = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            ids.add(insertNote(note));
+        }
+        return ids;
+    }
+
+    @Transaction
+    default void updateNote(Note note) {
+        note.setPreview(NotePreviewBuilder.build(note));
+        updateNoteRow(NoteContentCodec.encode(note));
+        deleteFtsRow(note.getId());
+        insertFtsRow(note.getId(), note.getTitle(), NoteSearch.searchableText(note));
+    }
+
+    // List notes, whose items are stored in list_items through ListItemDao:
+    @Transaction
+    default long insertListNote(Note note, List<ListItem> items) {
+        note.setContent(null);
+        note.setCompressedContent(null);
+        note.setPreview(NotePreviewBuilder.buildList(items));
+        long id = insertNoteRow(note);
+        insertFtsRow((int) id, note.getTitle(), NoteSearch.searchableText(items));
+        return id;
+    }
+
+    // The preview is only rebuilt when the caller knows the edit reached it, see
+    // NotePreviewBuilder.leadingItemCount. The search text is always rebuilt from all items.
+    @Transaction
+    default void updateListNote(Note note, List<ListItem> items, boolean rebuildPreview) {
+        updateListNoteRow(note.getId(), note.getTitle(), note.isFavorite(), note.getDateModified());
+        if (rebuildPreview) {
+            note.setPreview(NotePreviewBuilder.buildList(items));
+            setPreview(note.getId(), note.getPreview());
+        }
+        deleteFtsRow(note.getId());
+        insertFtsRow(note.getId(), note.getTitle(), NoteSearch.searchableText(items));
+    }
+
+    @Query("UPDATE notes SET title = :title, isFavorite = :isFavorite, dateModified = :dateModified " +
+            "WHERE id = :id")
+    void updateListNoteRow(int id, String title, boolean isFavorite, Date dateModified);
 
     @Insert
-    long insertNote(Note note);
+    long insertNoteRow(Note note);
 
     @Update
-    void updateNote(Note note);
+    void updateNoteRow(Note note);
+
+    @Query("UPDATE notes SET isFavorite = :isFavorite WHERE id = :id")
+    void setFavorite(int id, boolean isFavorite);
+
+    @Query("UPDATE notes SET preview = :preview WHERE id = :id")
+    void setPreview(int id, String preview);
+
+    // Renames a note without touching its content, items or preview
+    @Transaction
+    default void updateTitle(int id, String title, Date dateModified) {
+        updateTitleRow(id, title, dateModified);
+        setFtsTitle(id, title);
+    }
 
-    @Delete
-    void deleteNote(Note note);
+    @Query("UPDATE notes SET title = :title, dateModified = :dateModified WHERE id = :id")
+    void updateTitleRow(int id, String title, Date dateModified);
+
+    @Query("UPDATE notes_fts SET title = :title WHERE rowid = :id")
+    void setFtsTitle(int id, String title);
+
+    @Transaction
+    default void setFavorite(List<Integer> ids, boolean isFavorite) {
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_STATEMENT) {
+            List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_STATEMENT));
+            setFavoriteRows(chunk, isFavorite);
+        }
+    }
+
+    @Query("UPDATE notes SET isFavorite = :isFavorite WHERE id IN (:ids)")
+    void setFavoriteRows(List<Integer> ids, boolean isFavorite);
+
+    default void deleteNote(Note note) {
+        deleteNoteById(note.getId());
+    }
+
+    @Transaction
+    default void deleteNoteById(int id) {
+        deleteNoteRow(id);
+        deleteFtsRow(id);
+    }
 
     @Query("DELETE FROM notes WHERE id = :id")
-    void deleteNoteById(int id);
-}
\ No newline at end of file
+    void deleteNoteRow(int id);
+
+    @Transaction
+    default void deleteNotes(List<Integer> ids) {
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_STATEMENT) {
+            List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_STATEMENT));
+            deleteNoteRows(chunk);
+            deleteFtsRows(chunk);
+        }
+    }
+
+    @Query("DELETE FROM notes WHERE id IN (:ids)")
+    void deleteNoteRows(List<Integer> ids);
+
+    @Query("DELETE FROM notes_fts WHERE rowid IN (:ids)")
+    void deleteFtsRows(List<Integer> ids);
+
+    @Query(INSERT_FTS_QUERY)
+    void insertFtsRow(int id, String title, String body);
+
+    @Query(DELETE_FTS_QUERY)
+    void deleteFtsRow(int id);
+}
@@ -0,0 +1,97 @@
+package com.example.noteapp.database;
+
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.model.Note;
+import java.util.List;
+
+// Builds the preview text shown on note cards, stored in the notes.preview column
+public class NotePreviewBuilder {
+    private static final int MAX_TEXT_CHARS = 300;
+    static final int MAX_LIST_ITEMS = 3; // Show max 3 items in preview
+
+    private NotePreviewBuilder() {}
+
+    // Preview of a text note
+    public static String build(Note note) {
+        return build(note.getContent(), false);
+    }
+
+    // Preview of a list note from its items
+    public static String buildList(List<ListItem> items) {
+        return buildList(items, items == null ? 0 : items.size());
+    }
+
+    // Number of leading items of the list that buildList reads: up to and including the
+    // MAX_LIST_ITEMS-th non-empty one. Edits past them only change the preview through the
+    // item count.
+    public static int leadingItemCount(List<ListItem> items) {
+        int nonEmptyCount = 0;
+        for (int i = 0; i < items.size(); i++) {
+            String text = items.get(i).getText();
+            if (text != null && !text.trim().isEmpty() && ++nonEmptyCount == MAX_LIST_ITEMS) {
+                return i + 1;
+            }
+        }
+        return items.size();
+    }
+
+    // Preview from the leading items of a list with totalCount items, enough when the
+    // leading items include MAX_LIST_ITEMS non-empty ones or all of the list
+    public static String buildList(List<ListItem> items, int totalCount) {
+        if (items == null || items.isEmpty()) {
+            return "Empty list";
+        }
+
+        StringBuilder preview = new StringBuilder();
+        int itemCount = 0;
+
+        for (ListItem item : items) {
+            if (itemCount >= MAX_LIST_ITEMS) break;
+
+            String text = item.getText();
+            if (text != null && !text.trim().isEmpty()) {
+                if (itemCount > 0) {
+                    preview.append("\n");
+                }
+
+                // Add checkbox symbol
+                String checkbox = item.isChecked() ? "☑ " : "☐ ";
+                preview.append(checkbox).append(text.trim());
+                itemCount++;
+            }
+        }
+
+        // Add indicator if there are more items
+        if (totalCount > MAX_LIST_ITEMS) {
+            preview.append("\n... and ").append(totalCount - MAX_LIST_ITEMS).append(" more");
+        }
+
+        return preview.length() > 0 ? preview.toString() : "Empty list";
+    }
+
+    // Preview from the stored content column, list notes stored their items there as JSON
+    // before version 4 of the database
+    public static String build(String content, boolean isList) {
+        if (isList) {
+            return formatListContent(content);
+        }
+        if (content == null) {
+            return "";
+        }
+        return content.length() > MAX_TEXT_CHARS ? content.substring(0, MAX_TEXT_CHARS) : content;
+    }
+
+    private static String formatListContent(String jsonContent) {
+        try {
+            if (jsonContent == null || jsonContent.isEmpty()) {
+                return "Empty list";
+            }
+
+            return buildList(ListItemJson.fromJson(jsonContent));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return "List preview unavailable";
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package com.example.noteapp.database;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.model.Note;
+import com.example.noteapp.model.NoteSearchResult;
+import com.example.noteapp.model.NoteSummary;
+import com.example.noteapp.perf.Metrics;
+import com.example.noteapp.perf.PerfTrace;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs all note queries and writes off the main thread.
+// Reads share a small pool, writes go through a single thread so they are applied in order.
+// Every call returns a Future, cancelling it guarantees the callback is never invoked.
+// A read that fails calls its error callback instead, also on the main thread.
+// All writes to the notes go through here, which is how notes observers learn about them.
+// Room's invalidation tracker is kept as a backstop and notifies observers of any other write.
+public class NoteRepository {
+    private static final int READ_THREADS = 2;
+
+    private static volatile NoteRepository instance;
+
+    private final AppDatabase database;
+    private final NoteDao noteDao;
+    private final ListItemDao listItemDao;
+    private final NoteArchive archive;
+    private final NoteCache noteCache = new NoteCache(NoteCache.DEFAULT_MAX_NOTES, NoteCache.DEFAULT_MAX_CHARS);
+    private final ExecutorService readExecutor;
+    private final ExecutorService writeExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Runnable> notesObservers = new CopyOnWriteArrayList<>();
+    // Set while a notification is posted but has not run, so a burst of writes notifies once
+    private final AtomicBoolean notesChangePosted = new AtomicBoolean();
+    // Writes made here whose invalidation has not arrived yet, those are not notified again
+    private final AtomicInteger ownWrites = new AtomicInteger();
+    private volatile boolean importing;
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public interface ErrorCallback {
+        void onError(Exception error);
+    }
+
+    private NoteRepository(AppDatabase database) {
+        this.database = database;
+        this.noteDao = database.noteDao();
+        this.listItemDao = database.listItemDao();
+        this.archive = new NoteArchive(database);
+        this.readExecutor = Executors.newFixedThreadPool(READ_THREADS, namedThreads("NoteRepository-read"));
+        this.writeExecutor = Executors.newSingleThreadExecutor(namedThreads("NoteRepository-write"));
+        database.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("notes", "list_items") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                onTablesInvalidated();
+            }
+        });
+    }
+
+    public static NoteRepository getInstance(Context context) {
+        NoteRepository result = instance;
+        if (result != null) {
+            return result;
+        }
+        synchronized (NoteRepository.class) {
+            if (instance == null) {
+                instance = new NoteRepository(AppDatabase.getInstance(context));
+            }
+            return instance;
+        }
+    }
+
+    // Opens the database (schema validation and migrations) and prepares the statements of
+    // the first list load on a background thread, so the first real query does not pay for it
+    public Future<Boolean> prewarm() {
+        return submit(readExecutor, "NoteRepository.prewarm", () -> {
+            long start = PerfTrace.begin("AppDatabase.open");
+            database.getOpenHelper().getWritableDatabase();
+            PerfTrace.end("AppDatabase.open", start);
+            noteDao.getNotesFirstPage(1);
+            noteDao.getNoteById(0);
+            return true;
+        }, null);
+    }
+
+    // Calls onChanged on the main thread after writes to the notes are committed, except for
+    // optimistic writes whose caller already shows the change.
+    // Must be passed to removeNotesObserver when no longer needed.
+    public void addNotesObserver(Runnable onChanged) {
+        notesObservers.add(onChanged);
+    }
+
+    public void removeNotesObserver(Runnable onChanged) {
+        notesObservers.remove(onChanged);
+    }
+
+    // Called by Room after a commit that changed the notes or their items. Writes made here have
+    // already notified, or deliberately did not, so only a write from elsewhere notifies. An
+    // invalidation can cover several commits, one from here and one from elsewhere together
+    // are taken as ours.
+    private void onTablesInvalidated() {
+        if (importing) return; // the import notifies once when it ends
+        if (ownWrites.getAndSet(0) > 0) return;
+        Metrics.counter("NoteRepository.externalWrites").increment();
+        notifyNotesChanged();
+    }
+
+    private void notifyNotesChanged() {
+        if (notesChangePosted.getAndSet(true)) return;
+        mainHandler.post(() -> {
+            notesChangePosted.set(false);
+            for (Runnable observer : notesObservers) observer.run();
+        });
+    }
+
+    // Reads
+
+    public Future<List<NoteSummary>> loadFirstPage(boolean favoritesOnly, int limit,
+                                                   Callback<List<NoteSummary>> callback, ErrorCallback onError) {
+        return submit(readExecutor, "NoteRepository.loadFirstPage", () -> favoritesOnly
+                ? noteDao.getFavoriteNotesFirstPage(limit)
+                : noteDao.getNotesFirstPage(limit), callback, onError);
+    }
+
+    public Future<List<NoteSummary>> loadPageAfter(boolean favoritesOnly, NoteSummary lastNote, int limit,
+                                                   Callback<List<NoteSummary>> callback, ErrorCallback onError) {
+        return submit(readExecutor, "NoteRepository.loadPageAfter", () -> favoritesOnly
+                ? noteDao.getFavoriteNotesPageAfter(lastNote.getDateModified(), lastNote.getId(), limit)
+                : noteDao.getNotesPageAfter(lastNote.isFavorite(), lastNote.getDateModified(),
+                        lastNote.getId(), limit), callback, onError);
+    }
+
+    // The best matches first, at most limit of them
+    public Future<List<NoteSearchResult>> searchNotes(String matchQuery, boolean favoritesOnly, int limit,
+                                                      Callback<List<NoteSearchResult>> callback,
+                                                      ErrorCallback onError) {
+        return submit(readExecutor, "NoteRepository.searchNotes",
+                () -> noteDao.searchNotes(matchQuery, favoritesOnly, limit), callback, onError);
+    }
+
+    // Served from the note cache when possible, a note read from the database is cached
+    public Future<Note> getNoteById(int id, Callback<Note> callback, ErrorCallback onError) {
+        return submit(readExecutor, "NoteRepository.getNoteById", () -> readNote(id), callback, onError);
+    }
+
+    // The note if it is in the note cache, otherwise null. Never touches the database, so it can
+    // be called on the main thread to show a note in the first frame.
+    public Note getCachedNote(int id) {
+        return noteCache.get(id);
+    }
+
+    // Reads a note, and the items of a list note, into the note cache ahead of getNoteById or
+    // getCachedNote, e.g. while the screen that shows it is starting
+    public void prefetchNote(int id) {
+        if (noteCache.contains(id)) return;
+        submit(readExecutor, "NoteRepository.prefetchNote", () -> {
+            Note note = readNote(id);
+            if (note != null && note.isList()) readListItems(id);
+            return note;
+        }, null);
+    }
+
+    private Note readNote(int id) {
+        Note note = noteCache.get(id);
+        if (note != null) return note;
+        long version = noteCache.getWriteVersion();
+        note = noteDao.getNoteById(id);
+        noteCache.putRead(note, version);
+        return note;
+    }
+
+    // Served from the note cache when possible, like getNoteById
+    public Future<List<ListItem>> getListItems(int noteId, Callback<List<ListItem>> callback,
+                                               ErrorCallback onError) {
+        return submit(readExecutor, "NoteRepository.getListItems",
+                () -> readListItems(noteId), callback, onError);
+    }
+
+    // The items of a list note if they are in the note cache, otherwise null. Like
+    // getCachedNote it never touches the database.
+    public List<ListItem> getCachedListItems(int noteId) {
+        return noteCache.getItems(noteId);
+    }
+
+    private List<ListItem> readListItems(int noteId) {
+        List<ListItem> items = noteCache.getItems(noteId);
+        if (items != null) return items;
+        long version = noteCache.getWriteVersion();
+        items = listItemDao.getItemsForNote(noteId);
+        noteCache.putItemsRead(noteId, items, version);
+        return items;
+    }
+
+    // Writes, the callback receives whether the write succeeded
+
+    public Future<Boolean> insertNote(Note note, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.insertNote", () -> {
+            note.setId((int) noteDao.insertNote(note));
+            noteCache.putWritten(note);
+        }, callback);
+    }
+
+    public Future<Boolean> updateNote(Note note, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.updateNote", () -> {
+            noteDao.updateNote(note);
+            noteCache.putWritten(note);
+        }, callback);
+    }
+
+    // Saves take a snapshot that the caller no longer changes, as the write runs later on the
+    // write thread. The callback receives the id of the note, or -1 if the write failed.
+
+    // Inserts a text note with id 0, otherwise updates it
+    public Future<Integer> saveNote(Note note, Callback<Integer> callback) {
+        return submitWrite("NoteRepository.saveNote", true, () -> {
+            if (note.getId() == 0) {
+                note.setId((int) noteDao.insertNote(note));
+            } else {
+                noteDao.updateNote(note);
+            }
+            noteCache.putWritten(note);
+            return note.getId();
+        }, -1, callback);
+    }
+
+    // Saves a list note and only the item rows recorded in changes, in one transaction.
+    // The note row, its preview and search text are rebuilt from items.
+    // A note with id 0 is inserted first. The ids handed out are set on the items of changes,
+    // see ListItemChanges.applyIds.
+    public Future<Integer> saveListNote(Note note, List<ListItem> items, ListItemChanges changes,
+                                        Callback<Integer> callback) {
+        return submitWrite("NoteRepository.saveListNote", true, () -> {
+            database.runInTransaction(() -> writeListNote(note, items, changes));
+            noteCache.putWritten(note, items);
+            return note.getId();
+        }, -1, callback);
+    }
+
+    private void writeListNote(Note note, List<ListItem> items, ListItemChanges changes) {
+        boolean isNew = note.getId() == 0;
+        if (isNew) {
+            note.setId((int) noteDao.insertListNote(note, items));
+        }
+
+        for (ListItem item : changes.getDeleted()) {
+            if (item.getId() != 0) listItemDao.deleteItem(item.getId());
+        }
+        for (ListItem item : changes.getAdded()) {
+            item.setNoteId(note.getId());
+            item.setId((int) listItemDao.insertItem(item));
+        }
+        for (ListItem item : changes.getChanged()) {
+            listItemDao.updateItem(item);
+        }
+        for (ListItem item : changes.getMoved()) {
+            listItemDao.setPosition(item.getId(), item.getPosition());
+        }
+
+        if (!isNew) {
+            noteDao.updateListNote(note, items, changesPreview(items, changes));
+        }
+    }
+
+    // Whether changes can alter the preview: any item added or deleted changes the count,
+    // otherwise only an edited or moved item among the leading items the preview is built from
+    private static boolean changesPreview(List<ListItem> items, ListItemChanges changes) {
+        if (!changes.getAdded().isEmpty() || !changes.getDeleted().isEmpty()) return true;
+        int leadingCount = NotePreviewBuilder.leadingItemCount(items);
+        for (int i = 0; i < leadingCount; i++) {
+            ListItem item = items.get(i);
+            if (changes.getChanged().contains(item) || changes.getMoved().contains(item)) return true;
+        }
+        return false;
+    }
+
+    public Future<Boolean> setFavorite(int id, boolean isFavorite, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.setFavorite", () -> {
+            noteDao.setFavorite(id, isFavorite);
+            noteCache.setFavorite(id, isFavorite);
+        }, callback);
+    }
+
+    // Same write as setFavorite, for a caller that has already shown the new state and undoes it
+    // if the callback receives false. Notes observers are not notified, so nothing reloads.
+    public Future<Boolean> setFavoriteOptimistic(int id, boolean isFavorite, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.setFavoriteOptimistic", false, () -> {
+            noteDao.setFavorite(id, isFavorite);
+            noteCache.setFavorite(id, isFavorite);
+        }, callback);
+    }
+
+    // Writes only the title, favorite flag and modification date of a saved note, for edits
+    // that left its content or items alone. Takes a snapshot like saveNote.
+    public Future<Boolean> saveNoteMetadata(Note note, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.saveNoteMetadata", () -> {
+            database.runInTransaction(() -> {
+                noteDao.updateTitle(note.getId(), note.getTitle(), note.getDateModified());
+                noteDao.setFavorite(note.getId(), note.isFavorite());
+            });
+            // Only after the commit, a read in between could otherwise cache the old row.
+            // The note's content may be older than the cached one, so only these columns are taken.
+            noteCache.updateMetadata(note.getId(), note.getTitle(), note.isFavorite(), note.getDateModified());
+        }, callback);
+    }
+
+    public Future<Boolean> deleteNoteById(int id, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.deleteNoteById", () -> {
+            noteDao.deleteNoteById(id);
+            noteCache.remove(id);
+        }, callback);
+    }
+
+    // Batch writes, each runs as one transaction and so causes a single list refresh
+
+    public Future<Boolean> insertNotes(List<Note> notes, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.insertNotes", () -> noteDao.insertNotes(notes), callback);
+    }
+
+    public Future<Boolean> setFavorite(List<Integer> ids, boolean isFavorite, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.setFavoriteBatch", () -> {
+            noteDao.setFavorite(ids, isFavorite);
+            for (int id : ids) noteCache.setFavorite(id, isFavorite);
+        }, callback);
+    }
+
+    public Future<Boolean> deleteNotes(List<Integer> ids, Callback<Boolean> callback) {
+        return submitWrite("NoteRepository.deleteNotes", () -> {
+            noteDao.deleteNotes(ids);
+            for (int id : ids) noteCache.remove(id);
+        }, callback);
+    }
+
+    // Backup, the callback receives the number of notes copied or -1 if it failed.
+    // The channel is closed when done.
+
+    public Future<Integer> exportNotes(WritableByteChannel channel, Callback<Integer> callback) {
+        return submit(readExecutor, "NoteRepository.exportNotes", () -> {
+            try {
+                return archive.exportNotes(channel);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return -1;
+            }
+        }, callback);
+    }
+
+    public Future<Integer> importNotes(ReadableByteChannel channel, Callback<Integer> callback) {
+        return submit(writeExecutor, "NoteRepository.importNotes", () -> {
+            importing = true;
+            try {
+                return archive.importNotes(channel);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return -1;
+            } finally {
+                // The invalidation of the last batch may still be on its way
+                ownWrites.incrementAndGet();
+                importing = false;
+                // Batches committed before a failure stay imported
+                notifyNotesChanged();
+            }
+        }, callback);
+    }
+
+    private Future<Boolean> submitWrite(String name, Runnable write, Callback<Boolean> callback) {
+        return submitWrite(name, true, write, callback);
+    }
+
+    private Future<Boolean> submitWrite(String name, boolean notifyObservers, Runnable write,
+                                        Callback<Boolean> callback) {
+        return submitWrite(name, notifyObservers, () -> {
+            write.run();
+            return true;
+        }, false, callback);
+    }
+
+    // The callback receives the result of the write, or failed if it threw
+    private <T> Future<T> submitWrite(String name, boolean notifyObservers, Callable<T> write, T failed,
+                                      Callback<T> callback) {
+        return submit(writeExecutor, name, () -> {
+            // Counted before the write, its invalidation can arrive before the call returns
+            ownWrites.incrementAndGet();
+            try {
+                T result = write.call();
+                if (notifyObservers) notifyNotesChanged();
+                return result;
+            } catch (Exception e) {
+                e.printStackTrace();
+                Metrics.counter("NoteRepository.writeFailures").increment();
+                // Rolled back, so no invalidation will arrive for it
+                forgetOwnWrite();
+                return failed;
+            }
+        }, callback);
+    }
+
+    private void forgetOwnWrite() {
+        int count;
+        do {
+            count = ownWrites.get();
+        } while (count > 0 && !ownWrites.compareAndSet(count, count - 1));
+    }
+
+    // Runs the work on the executor, its duration is recorded under name and the size of a
+    // list result under name + ".rows"
+    private <T> Future<T> submit(ExecutorService executor, String name, Callable<T> work, Callback<T> callback) {
+        return submit(executor, name, work, callback, null);
+    }
+
+    // Like submit, onError is called instead of callback if the work throws
+    private <T> Future<T> submit(ExecutorService executor, String name, Callable<T> work, Callback<T> callback,
+                                 ErrorCallback onError) {
+        Callable<T> timed = () -> {
+            long start = PerfTrace.begin(name);
+            try {
+                T result = work.call();
+                if (result instanceof Collection) {
+                    Metrics.histogram(name + ".rows").record(((Collection<?>) result).size());
+                }
+                return result;
+            } finally {
+                PerfTrace.end(name, start);
+            }
+        };
+        CallbackTask<T> task = new CallbackTask<>(timed, callback, onError, mainHandler);
+        executor.execute(task);
+        return task;
+    }
+
+    // Delivers the result or the failure on the main thread unless the task was cancelled,
+    // even after it finished
+    private static class CallbackTask<T> extends FutureTask<T> {
+        private final Callback<T> callback;
+        private final ErrorCallback onError;
+        private final Handler mainHandler;
+        private volatile boolean cancelled;
+
+        CallbackTask(Callable<T> work, Callback<T> callback, ErrorCallback onError, Handler mainHandler) {
+            super(work);
+            this.callback = callback;
+            this.onError = onError;
+            this.mainHandler = mainHandler;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        protected void done() {
+            if (cancelled || isCancelled()) return;
+            T result;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                Exception error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                error.printStackTrace();
+                Metrics.counter("NoteRepository.readFailures").increment();
+                if (onError == null) return;
+                mainHandler.post(() -> {
+                    if (!cancelled) onError.onError(error);
+                });
+                return;
+            } catch (InterruptedException | CancellationException e) {
+                return;
+            }
+            if (callback == null) return;
+            // Checked again on the main thread, the caller may cancel before the post runs
+            mainHandler.post(() -> {
+                if (!cancelled) callback.onResult(result);
+            });
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.noteapp.database;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.model.Note;
+import com.example.noteapp.model.NoteSearchMatch;
+import com.example.noteapp.model.NoteSummary;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Helpers for the notes_fts full-text index: indexed text, MATCH queries, ranking and highlighting
+public class NoteSearch {
+    // Markers written around matched terms by snippet(), see NoteDao.searchNotes
+    public static final char MATCH_START = '\u0002';
+    public static final char MATCH_END = '\u0003';
+
+    // A title hit counts twice as much as a body hit
+    private static final double[] COLUMN_WEIGHTS = {2.0, 1.0};
+
+    private NoteSearch() {}
+
+    // Text indexed as the body of a text note
+    public static String searchableText(Note note) {
+        return note.getContent();
+    }
+
+    // Text indexed as the body of a list note: the item texts, one per line
+    public static String searchableText(List<ListItem> items) {
+        if (items == null) return "";
+
+        StringBuilder text = new StringBuilder();
+        for (ListItem item : items) {
+            if (item.getText() == null || item.getText().isEmpty()) continue;
+            if (text.length() > 0) text.append('\n');
+            text.append(item.getText());
+        }
+        return text.toString();
+    }
+
+    // Body text from the stored content column, list notes stored their items there as JSON
+    // before version 4 of the database
+    public static String searchableText(String content, boolean isList) {
+        if (content == null || !isList) {
+            return content;
+        }
+        try {
+            return searchableText(ListItemJson.fromJson(content));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return "";
+        }
+    }
+
+    // Turns user input into an FTS query where every word is a prefix term that must match.
+    // Returns null when there is nothing to search for.
+    public static String buildMatchQuery(String input) {
+        if (input == null) return null;
+
+        StringBuilder query = new StringBuilder();
+        for (String word : input.trim().split("\\s+")) {
+            // Drop characters that have a meaning in the FTS query syntax
+            String term = word.replaceAll("[\"*^():\\-]", "");
+            if (term.isEmpty()) continue;
+            if (query.length() > 0) query.append(' ');
+            query.append('"').append(term).append("*\"");
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    // Best first: higher score, then more recently modified, then higher id
+    static final Comparator<NoteSearchMatch> BEST_FIRST = (a, b) -> {
+        int byRank = Double.compare(b.getRank(), a.getRank());
+        if (byRank != 0) return byRank;
+        int byDate = b.getDateModified().compareTo(a.getDateModified());
+        if (byDate != 0) return byDate;
+        return Integer.compare(b.getId(), a.getId());
+    };
+
+    // Scores every match from its matchinfo blob and returns the best limit of them, best first.
+    // Keeps only limit matches at a time, so a search matching most notes sorts little.
+    public static List<NoteSearchMatch> top(List<NoteSearchMatch> matches, int limit) {
+        if (limit <= 0) return new ArrayList<>();
+        // Worst of the kept matches at the head, replaced by anything better
+        PriorityQueue<NoteSearchMatch> best = new PriorityQueue<>(
+                Math.min(limit, Math.max(1, matches.size())), Collections.reverseOrder(BEST_FIRST));
+        for (NoteSearchMatch match : matches) {
+            match.setRank(score(match.getMatchInfo()));
+            if (best.size() < limit) {
+                best.add(match);
+            } else if (BEST_FIRST.compare(match, best.peek()) < 0) {
+                best.poll();
+                best.add(match);
+            }
+        }
+        List<NoteSearchMatch> top = new ArrayList<>(best);
+        Collections.sort(top, BEST_FIRST);
+        return top;
+    }
+
+    // The notes in the order of ids, notes whose id is missing are left out
+    public static <T extends NoteSummary> List<T> inOrderOf(List<Integer> ids, List<T> notes) {
+        Map<Integer, T> byId = new HashMap<>();
+        for (T note : notes) {
+            byId.put(note.getId(), note);
+        }
+        List<T> ordered = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            T note = byId.get(id);
+            if (note != null) ordered.add(note);
+        }
+        return ordered;
+    }
+
+    // matchinfo 'pcx' layout: phrase count, column count, then for every phrase and column
+    // the hits in this row, the hits in all rows and the number of rows with a hit
+    static double score(byte[] matchInfo) {
+        if (matchInfo == null || matchInfo.length < 8) return 0;
+
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phraseCount = buffer.getInt(0);
+        int columnCount = buffer.getInt(4);
+
+        double score = 0;
+        for (int phrase = 0; phrase < phraseCount; phrase++) {
+            for (int column = 0; column < columnCount; column++) {
+                int offset = 8 + 12 * (phrase * columnCount + column);
+                int hitsInRow = buffer.getInt(offset);
+                int hitsInAllRows = buffer.getInt(offset + 4);
+                if (hitsInRow > 0 && hitsInAllRows > 0) {
+                    double weight = column < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[column] : 1.0;
+                    score += weight * hitsInRow / hitsInAllRows;
+                }
+            }
+        }
+        return score;
+    }
+
+    // Replaces the snippet markers with bold spans
+    public static CharSequence highlight(String snippet) {
+        if (snippet == null || snippet.indexOf(MATCH_START) < 0) return snippet;
+
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        int start = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == MATCH_START) {
+                start = text.length();
+            } else if (c == MATCH_END) {
+                if (start >= 0) {
+                    text.setSpan(new StyleSpan(Typeface.BOLD), start, text.length(),
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                start = -1;
+            } else {
+                text.append(c);
+            }
+        }
+        return text;
+    }
+}
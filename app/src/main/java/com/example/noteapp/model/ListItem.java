@@ -1,18 +1,70 @@
 package com.example.noteapp.model;
 
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One entry of a list note, ordered by position within its note.
+// Positions only need to be increasing, deleting an item leaves a gap.
+@Entity(tableName = "list_items",
+        foreignKeys = @ForeignKey(entity = Note.class,
+                parentColumns = "id",
+                childColumns = "noteId",
+                onDelete = ForeignKey.CASCADE),
+        indices = {@Index(value = {"noteId", "position"})})
 public class ListItem {
+    private static final AtomicLong nextLocalId = new AtomicLong();
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+    private int noteId;
+    private int position;
     private String text;
     private boolean isChecked;
+    // Unique within the process and never changes, unlike id which is 0 until the item is saved
+    @Ignore
+    private final long localId;
 
+    public ListItem() {
+        this.localId = nextLocalId.incrementAndGet();
+    }
+
+    @Ignore
     public ListItem(String text, boolean isChecked) {
+        this.localId = nextLocalId.incrementAndGet();
         this.text = text;
         this.isChecked = isChecked;
     }
 
+    // Copy of every column, with the same local id as the original
+    @Ignore
+    public ListItem(ListItem other) {
+        this.localId = other.localId;
+        this.id = other.id;
+        this.noteId = other.noteId;
+        this.position = other.position;
+        this.text = other.text;
+        this.isChecked = other.isChecked;
+    }
+
     // Getters and Setters
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public int getNoteId() { return noteId; }
+    public void setNoteId(int noteId) { this.noteId = noteId; }
+
+    public int getPosition() { return position; }
+    public void setPosition(int position) { this.position = position; }
+
     public String getText() { return text; }
     public void setText(String text) { this.text = text; }
 
     public boolean isChecked() { return isChecked; }
     public void setChecked(boolean checked) { isChecked = checked; }
-}
\ No newline at end of file
+
+    public long getLocalId() { return localId; }
+}
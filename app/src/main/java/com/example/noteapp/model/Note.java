@@ -1,15 +1,25 @@
 package com.example.noteapp.model;
 
 import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import java.util.Date;
 
-@Entity(tableName = "notes")
+// The (isFavorite, dateModified) index serves the favorites-first and favorites-only orders,
+// id is the rowid and breaks ties without being listed
+@Entity(tableName = "notes",
+        indices = {@Index(value = {"isFavorite", "dateModified"})})
 public class Note {
     @PrimaryKey(autoGenerate = true)
     private int id;
     private String title;
     private String content;
+    // Large content is stored deflated here instead, see NoteContentCodec. Notes handed out by
+    // NoteDao always have it decoded back into content.
+    private byte[] compressedContent;
+    // Short display text for the list screen, kept in sync by NoteDao on insert/update
+    private String preview;
     private boolean isFavorite;
     private boolean isList;
     private Date dateCreated;
@@ -30,6 +40,20 @@ public class Note {
         this.dateModified = new Date();
     }
 
+    // Copy of every column, for writing a note in a different form than the caller holds it
+    @Ignore
+    public Note(Note other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.content = other.content;
+        this.compressedContent = other.compressedContent;
+        this.preview = other.preview;
+        this.isFavorite = other.isFavorite;
+        this.isList = other.isList;
+        this.dateCreated = other.dateCreated;
+        this.dateModified = other.dateModified;
+    }
+
     // Getters and Setters
     public int getId() { return id; }
     public void setId(int id) { this.id = id; }
@@ -40,6 +64,12 @@ public class Note {
     public String getContent() { return content; }
     public void setContent(String content) { this.content = content; }
 
+    public byte[] getCompressedContent() { return compressedContent; }
+    public void setCompressedContent(byte[] compressedContent) { this.compressedContent = compressedContent; }
+
+    public String getPreview() { return preview; }
+    public void setPreview(String preview) { this.preview = preview; }
+
     public boolean isFavorite() { return isFavorite; }
     public void setFavorite(boolean favorite) { isFavorite = favorite; }
 
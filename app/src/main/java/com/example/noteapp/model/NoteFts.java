@@ -0,0 +1,35 @@
+package com.example.noteapp.model;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+import androidx.room.PrimaryKey;
+
+// Full-text index of notes, rowid is the id of the indexed note.
+// For list notes the body holds the text of the list items instead of the raw JSON.
+@Fts4(tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "notes_fts")
+public class NoteFts {
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    private int rowid;
+    private String title;
+    private String body;
+
+    public NoteFts(int rowid, String title, String body) {
+        this.rowid = rowid;
+        this.title = title;
+        this.body = body;
+    }
+
+    // Getters and Setters
+    public int getRowid() { return rowid; }
+    public void setRowid(int rowid) { this.rowid = rowid; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public String getBody() { return body; }
+    public void setBody(String body) { this.body = body; }
+}
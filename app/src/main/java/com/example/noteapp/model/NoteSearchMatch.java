@@ -0,0 +1,27 @@
+package com.example.noteapp.model;
+
+import androidx.room.Ignore;
+import java.util.Date;
+
+// A note matching a search with only what ranking needs, see NoteSearch.top()
+public class NoteSearchMatch {
+    private int id;
+    // Raw matchinfo(notes_fts, 'pcx') blob
+    private byte[] matchInfo;
+    private Date dateModified;
+    @Ignore
+    private double rank;
+
+    // Getters and Setters
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public byte[] getMatchInfo() { return matchInfo; }
+    public void setMatchInfo(byte[] matchInfo) { this.matchInfo = matchInfo; }
+
+    public Date getDateModified() { return dateModified; }
+    public void setDateModified(Date dateModified) { this.dateModified = dateModified; }
+
+    public double getRank() { return rank; }
+    public void setRank(double rank) { this.rank = rank; }
+}
@@ -0,0 +1,5 @@
+package com.example.noteapp.model;
+
+// A note matching a search, the preview holds the highlighted snippet of the match
+public class NoteSearchResult extends NoteSummary {
+}
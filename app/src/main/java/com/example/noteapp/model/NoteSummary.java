@@ -0,0 +1,47 @@
+package com.example.noteapp.model;
+
+import androidx.room.Ignore;
+import java.util.Date;
+
+// Lightweight projection of a note used by the list screen, without the content column
+public class NoteSummary {
+    private int id;
+    private String title;
+    private String preview;
+    private boolean isFavorite;
+    private boolean isList;
+    private Date dateModified;
+
+    public NoteSummary() {
+    }
+
+    // Copy for changing a note shown in a list, which must not be modified in place
+    @Ignore
+    public NoteSummary(NoteSummary other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.preview = other.preview;
+        this.isFavorite = other.isFavorite;
+        this.isList = other.isList;
+        this.dateModified = other.dateModified;
+    }
+
+    // Getters and Setters
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public String getPreview() { return preview; }
+    public void setPreview(String preview) { this.preview = preview; }
+
+    public boolean isFavorite() { return isFavorite; }
+    public void setFavorite(boolean favorite) { isFavorite = favorite; }
+
+    public boolean isList() { return isList; }
+    public void setList(boolean list) { isList = list; }
+
+    public Date getDateModified() { return dateModified; }
+    public void setDateModified(Date dateModified) { this.dateModified = dateModified; }
+}
@@ -0,0 +1,72 @@
+package com.example.noteapp.perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Process-wide registry of counters and histograms, looked up by name.
+// Every span recorded by PerfTrace also lands in the histogram of the same name, so the
+// timed hot paths (binds, repository calls, parsing) get percentiles without extra code.
+// Recording never takes a lock, hot paths may keep the returned instance in a field.
+public final class Metrics {
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    public static Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) histogram = created;
+        }
+        return histogram;
+    }
+
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) counter = created;
+        }
+        return counter;
+    }
+
+    // Report of all metrics sorted by name. Histograms whose name does not end in a unit
+    // suffix (".rows", ".bytes", ".items") hold nanoseconds and are shown in milliseconds.
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+
+        List<String> names = new ArrayList<>(histograms.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            Histogram h = histograms.get(name);
+            if (h == null || h.getCount() == 0) continue;
+            boolean isTime = !(name.endsWith(".rows") || name.endsWith(".bytes") || name.endsWith(".items"));
+            double scale = isTime ? 1e6 : 1;
+            out.append(name).append('\n');
+            out.append(String.format(Locale.US,
+                    "  n=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f%s%n",
+                    h.getCount(), h.getMean() / scale,
+                    h.getPercentile(50) / scale, h.getPercentile(90) / scale,
+                    h.getPercentile(99) / scale, h.getMax() / scale, isTime ? " ms" : ""));
+        }
+
+        names = new ArrayList<>(counters.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            Counter c = counters.get(name);
+            if (c != null) out.append(name).append(" = ").append(c.get()).append('\n');
+        }
+        return out.toString();
+    }
+
+    public static void reset() {
+        for (Histogram h : histograms.values()) h.reset();
+        for (Counter c : counters.values()) c.reset();
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.noteapp.perf;
+
+import androidx.core.os.TraceCompat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Lightweight timing of startup phases, DAO calls and adapter binds.
+// Spans are kept in a fixed-size ring buffer (newest overwrite oldest) and also emitted as
+// system trace sections. The last duration of every span name is kept separately, so startup
+// phases can still be read after many binds have been recorded.
+// Recording takes no lock, it runs on every bind: a span claims a slot with an atomic counter
+// and is published there as one immutable object, so a reader never sees half of it.
+// Plain JVM code except for the trace sections, which tests can turn off.
+public final class PerfTrace {
+    public static final int CAPACITY = 1024;
+
+    public interface Clock {
+        long nanoTime();
+    }
+
+    public static class Span {
+        public final String name;
+        public final long startNanos;
+        public final long durationNanos;
+        public final String thread;
+        // Position in the order spans were appended
+        final long sequence;
+
+        Span(long sequence, String name, long startNanos, long durationNanos, String thread) {
+            this.sequence = sequence;
+            this.name = name;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.thread = thread;
+        }
+    }
+
+    // Number of spans ever appended, span n goes to slot n % CAPACITY
+    private static final AtomicLong appended = new AtomicLong();
+    private static final AtomicReferenceArray<Span> spans = new AtomicReferenceArray<>(CAPACITY);
+    private static final ConcurrentHashMap<String, AtomicLong> lastDurations = new ConcurrentHashMap<>();
+
+    private static volatile Clock clock = System::nanoTime;
+    private static volatile boolean systemTraceEnabled = true;
+    // Start of the process as far as the app can tell, set from Application.onCreate
+    private static volatile long processStartNanos = System.nanoTime();
+
+    private PerfTrace() {}
+
+    public static void setClock(Clock newClock) {
+        clock = newClock;
+    }
+
+    public static void setSystemTraceEnabled(boolean enabled) {
+        systemTraceEnabled = enabled;
+    }
+
+    public static long now() {
+        return clock.nanoTime();
+    }
+
+    public static void markProcessStart() {
+        processStartNanos = now();
+    }
+
+    // Section on the current thread, end() has to be called on the same thread in LIFO order
+    public static long begin(String name) {
+        if (systemTraceEnabled) TraceCompat.beginSection(name);
+        return now();
+    }
+
+    public static void end(String name, long startNanos) {
+        long end = now();
+        if (systemTraceEnabled) TraceCompat.endSection();
+        record(name, startNanos, end);
+    }
+
+    // Section that may end on another thread
+    public static long beginAsync(String name) {
+        long start = now();
+        if (systemTraceEnabled) TraceCompat.beginAsyncSection(name, (int) start);
+        return start;
+    }
+
+    public static void endAsync(String name, long startNanos) {
+        long end = now();
+        if (systemTraceEnabled) TraceCompat.endAsyncSection(name, (int) startNanos);
+        record(name, startNanos, end);
+    }
+
+    // Records the time since the process start, e.g. for the first frame
+    public static void markSinceProcessStart(String name) {
+        record(name, processStartNanos, now());
+    }
+
+    public static void record(String name, long startNanos, long endNanos) {
+        long duration = endNanos - startNanos;
+        Metrics.histogram(name).record(duration);
+        append(name, startNanos, duration);
+    }
+
+    private static void append(String name, long startNanos, long duration) {
+        long n = appended.getAndIncrement();
+        int slot = (int) (n % CAPACITY);
+        Span span = new Span(n, name, startNanos, duration, Thread.currentThread().getName());
+        // A writer that was lapped by a full ring of newer spans does not replace the newer one
+        Span current;
+        do {
+            current = spans.get(slot);
+            if (current != null && current.sequence > n) break;
+        } while (!spans.compareAndSet(slot, current, span));
+
+        AtomicLong last = lastDurations.get(name);
+        if (last == null) {
+            AtomicLong created = new AtomicLong(duration);
+            last = lastDurations.putIfAbsent(name, created);
+            if (last == null) return;
+        }
+        last.set(duration);
+    }
+
+    // Last recorded duration of a span, or -1 if it was never recorded
+    public static long getLastDurationNanos(String name) {
+        AtomicLong duration = lastDurations.get(name);
+        return duration != null ? duration.get() : -1;
+    }
+
+    // Recorded spans, oldest first. Taken while spans may still be recorded: a slot that is not
+    // published yet or already holds a newer span is left out, so the result can miss a few of
+    // the newest or oldest spans.
+    public static List<Span> snapshot() {
+        long end = appended.get();
+        long start = Math.max(0, end - CAPACITY);
+        List<Span> result = new ArrayList<>((int) (end - start));
+        for (long n = start; n < end; n++) {
+            Span span = spans.get((int) (n % CAPACITY));
+            if (span != null && span.sequence == n) result.add(span);
+        }
+        return result;
+    }
+
+    public static String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Span span : snapshot()) {
+            out.append(String.format(Locale.US, "%10.3f ms  %8.3f ms  %-24s %s%n",
+                    (span.startNanos - processStartNanos) / 1e6, span.durationNanos / 1e6,
+                    span.thread, span.name));
+        }
+        return out.toString();
+    }
+
+    // Spans recorded while the reset runs may be kept
+    public static void reset() {
+        appended.set(0);
+        for (int i = 0; i < CAPACITY; i++) {
+            spans.set(i, null);
+        }
+        lastDurations.clear();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.noteapp.adapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.core.text.PrecomputedTextCompat;
+import com.example.noteapp.model.NoteSummary;
+import java.util.Date;
+import java.util.concurrent.FutureTask;
+import org.junit.Test;
+
+public class NoteTextCacheTest {
+    @Test
+    public void entryIsUsedWhileTheNoteIsUnchanged() {
+        NoteTextCache cache = new NoteTextCache(4);
+        NoteTextCache.Entry entry = cache.put(note(1, 100, "milk"), "milk", "date", null, null);
+
+        // A different summary object with the same state, as a reload returns
+        assertSame(entry, cache.get(note(1, 100, new String("milk"))));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void entryIsStaleWhenDateModifiedChanges() {
+        NoteTextCache cache = new NoteTextCache(4);
+        cache.put(note(1, 100, "milk"), "milk", "date", null, null);
+
+        assertNull(cache.get(note(1, 200, "milk")));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void entryIsStaleWhenThePreviewChanges() {
+        NoteTextCache cache = new NoteTextCache(4);
+        cache.put(note(1, 100, "milk"), "milk", "date", null, null);
+        cache.put(note(2, 100, null), null, "date", null, null);
+
+        // Same dateModified, as a write that does not touch it could leave it
+        assertNull(cache.get(note(1, 100, "bread")));
+        assertNull(cache.get(note(2, 100, "bread")));
+        assertNull(cache.get(note(1, 100, null)));
+        assertNotNull(cache.get(note(2, 100, null)));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        NoteTextCache cache = new NoteTextCache(2);
+        cache.put(note(1, 100, "a"), "a", "date", null, null);
+        cache.put(note(2, 100, "b"), "b", "date", null, null);
+        assertNotNull(cache.get(note(1, 100, "a")));
+
+        cache.put(note(3, 100, "c"), "c", "date", null, null);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(note(2, 100, "b")));
+        assertNotNull(cache.get(note(1, 100, "a")));
+        assertNotNull(cache.get(note(3, 100, "c")));
+    }
+
+    @Test
+    public void pendingMeasuringIsCancelledWhenEvictedOrReplaced() {
+        NoteTextCache cache = new NoteTextCache(1);
+        FutureTask<PrecomputedTextCompat> evicted = pending();
+        FutureTask<PrecomputedTextCompat> replaced = pending();
+        FutureTask<PrecomputedTextCompat> kept = pending();
+
+        cache.put(note(1, 100, "a"), null, "date", evicted, null);
+        cache.put(note(2, 100, "b"), null, "date", replaced, null);
+        cache.put(note(2, 200, "b"), null, "date", kept, null);
+
+        assertTrue(evicted.isCancelled());
+        assertTrue(replaced.isCancelled());
+        assertFalse(kept.isCancelled());
+    }
+
+    @Test
+    public void boundMeasuringIsNotCancelledUntilUnbound() {
+        NoteTextCache cache = new NoteTextCache(1);
+        FutureTask<PrecomputedTextCompat> title = pending();
+        FutureTask<PrecomputedTextCompat> preview = pending();
+        NoteTextCache.Entry entry = cache.put(note(1, 100, "a"), null, "date", title, preview);
+        // Bound by two holders, as a change animation can show the old and the new view
+        cache.bind(entry);
+        cache.bind(entry);
+
+        cache.put(note(2, 100, "b"), null, "date", pending(), null);
+        assertFalse(title.isCancelled());
+
+        cache.unbind(entry);
+        assertFalse(title.isCancelled());
+        cache.unbind(entry);
+        assertTrue(title.isCancelled());
+        assertTrue(preview.isCancelled());
+    }
+
+    @Test
+    public void unboundEntryInTheCacheIsNotCancelled() {
+        NoteTextCache cache = new NoteTextCache(1);
+        FutureTask<PrecomputedTextCompat> title = pending();
+        NoteTextCache.Entry entry = cache.put(note(1, 100, "a"), null, "date", title, null);
+        cache.bind(entry);
+
+        // The holder is recycled, the entry stays for the next bind of the note
+        cache.unbind(entry);
+
+        assertFalse(title.isCancelled());
+        assertSame(entry, cache.get(note(1, 100, "a")));
+    }
+
+    @Test
+    public void finishedMeasuringIsKept() {
+        NoteTextCache cache = new NoteTextCache(1);
+        FutureTask<PrecomputedTextCompat> done = pending();
+        done.run();
+
+        cache.put(note(1, 100, "a"), null, "date", done, null);
+        cache.clear();
+
+        assertFalse(done.isCancelled());
+        assertEquals(0, cache.size());
+    }
+
+    private static FutureTask<PrecomputedTextCompat> pending() {
+        return new FutureTask<>(() -> null);
+    }
+
+    private static NoteSummary note(int id, long dateModified, String preview) {
+        NoteSummary note = new NoteSummary();
+        note.setId(id);
+        note.setPreview(preview);
+        note.setDateModified(new Date(dateModified));
+        return note;
+    }
+}
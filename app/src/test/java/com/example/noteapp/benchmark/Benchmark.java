@@ -0,0 +1,136 @@
+package com.example.noteapp.benchmark;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Small benchmark runner for plain JVM unit tests, in the spirit of JMH without its harness:
+// every operation is warmed up, then run in batches for a fixed time, and the mean time and
+// bytes allocated per call on the calling thread are reported. Values that are not timings,
+// like a database file size, can be reported next to them.
+// The results of a suite are written as JSON to <benchmark.outputDir>/<suite>.json
+// (build/benchmark-results by default) so runs of different releases can be compared.
+public final class Benchmark {
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static final class Result {
+        public final String name;
+        public final double value;
+        public final String unit;
+        // Only for measured operations, 0 and -1 otherwise
+        public final long iterations;
+        // -1 if the JVM cannot measure allocations per thread
+        public final double bytesPerOp;
+
+        Result(String name, double value, String unit, long iterations, double bytesPerOp) {
+            this.name = name;
+            this.value = value;
+            this.unit = unit;
+            this.iterations = iterations;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    private static final long WARMUP_NANOS = 300_000_000L;
+    private static final long MEASURE_NANOS = 700_000_000L;
+
+    // Results are summed into this so the JIT cannot drop the measured calls
+    private static volatile int sink;
+
+    private final String suite;
+    private final List<Result> results = new ArrayList<>();
+
+    public Benchmark(String suite) {
+        this.suite = suite;
+    }
+
+    public Result measure(String name, Operation operation) throws Exception {
+        runFor(operation, WARMUP_NANOS);
+
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long iterations = runFor(operation, MEASURE_NANOS);
+        long elapsed = System.nanoTime() - start;
+        long bytesAfter = allocatedBytes();
+
+        double bytesPerOp = bytesBefore < 0 ? -1 : (double) (bytesAfter - bytesBefore) / iterations;
+        Result result = new Result(name, (double) elapsed / iterations, "ns/op", iterations, bytesPerOp);
+        results.add(result);
+        System.out.println(String.format(Locale.US, "%s.%s: %.1f ns/op, %.0f B/op (%d ops)",
+                suite, name, result.value, result.bytesPerOp, result.iterations));
+        return result;
+    }
+
+    public Result report(String name, double value, String unit) {
+        Result result = new Result(name, value, unit, 0, -1);
+        results.add(result);
+        System.out.println(String.format(Locale.US, "%s.%s: %.1f %s", suite, name, value, unit));
+        return result;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public File write() throws IOException {
+        File dir = new File(System.getProperty("benchmark.outputDir", "build/benchmark-results"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, suite + ".json");
+        try (Writer out = new FileWriter(file); JsonWriter json = new JsonWriter(out)) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("suite").value(suite);
+            json.name("jvm").value(System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+            json.name("results").beginArray();
+            for (Result result : results) {
+                json.beginObject();
+                json.name("name").value(result.name);
+                json.name("value").value(result.value);
+                json.name("unit").value(result.unit);
+                json.name("iterations").value(result.iterations);
+                json.name("bytesPerOp").value(result.bytesPerOp);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        return file;
+    }
+
+    private static long runFor(Operation operation, long nanos) throws Exception {
+        long iterations = 0;
+        int batch = 1;
+        long deadline = System.nanoTime() + nanos;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < batch; i++) {
+                Object result = operation.run();
+                sink += System.identityHashCode(result);
+            }
+            iterations += batch;
+            if (batch < 1024) batch *= 2;
+        }
+        return iterations;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
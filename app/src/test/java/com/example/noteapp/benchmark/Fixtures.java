@@ -0,0 +1,49 @@
+package com.example.noteapp.benchmark;
+
+import com.example.noteapp.model.ListItem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Generated note content for tests and benchmarks. Text is made of common words in random
+// order with a fixed seed, so it compresses about as well as real notes and runs repeat.
+public final class Fixtures {
+    private static final String[] WORDS = {
+            "the", "milk", "call", "meeting", "tomorrow", "remember", "to", "buy", "and", "for",
+            "project", "notes", "about", "list", "weekend", "with", "check", "email", "draft",
+            "review", "plan", "budget", "coffee", "bread", "ideas", "book", "a", "of", "on", "in",
+            "schedule", "dentist", "pick", "up", "kids", "at", "five", "groceries", "café", "naïve"
+    };
+
+    private Fixtures() {}
+
+    public static String text(int chars, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(chars + 16);
+        int lineLength = 0;
+        while (text.length() < chars) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            text.append(word);
+            lineLength += word.length();
+            if (lineLength > 60 + random.nextInt(40)) {
+                text.append('\n');
+                lineLength = 0;
+            } else {
+                text.append(' ');
+            }
+        }
+        text.setLength(chars);
+        return text.toString();
+    }
+
+    public static List<ListItem> listItems(int count, long seed) {
+        Random random = new Random(seed);
+        List<ListItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ListItem item = new ListItem(text(8 + random.nextInt(40), seed + i).trim(), random.nextInt(4) == 0);
+            item.setPosition(i);
+            items.add(item);
+        }
+        return items;
+    }
+}
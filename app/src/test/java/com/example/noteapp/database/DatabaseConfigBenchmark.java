@@ -0,0 +1,153 @@
+package com.example.noteapp.database;
+
+import com.example.noteapp.benchmark.Benchmark;
+import com.example.noteapp.benchmark.Fixtures;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Write throughput of the storage settings of DatabaseConfig on a database file, with the
+// statements NoteDao runs: a save rewrites the note row and its full-text row in one
+// transaction, an import inserts many notes in one.
+// Runs on the desktop SQLite of sqlite-jdbc, so the numbers compare settings, not devices.
+public class DatabaseConfigBenchmark {
+    private static final int NOTES = 1000;
+    private static final int IMPORT_BATCH = 200;
+
+    private static Benchmark benchmark;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        benchmark = new Benchmark("DatabaseConfig");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        benchmark.write();
+    }
+
+    @Test
+    public void walSynchronousNormal() throws Exception {
+        run("wal.normal", new DatabaseConfig());
+    }
+
+    @Test
+    public void walSynchronousFull() throws Exception {
+        run("wal.full", new DatabaseConfig().setSynchronous(DatabaseConfig.Synchronous.FULL));
+    }
+
+    @Test
+    public void walSynchronousOff() throws Exception {
+        run("wal.off", new DatabaseConfig().setSynchronous(DatabaseConfig.Synchronous.OFF));
+    }
+
+    @Test
+    public void walFrequentCheckpoints() throws Exception {
+        run("wal.normal.checkpoint100", new DatabaseConfig().setWalAutoCheckpointPages(100));
+    }
+
+    @Test
+    public void walLargeCache() throws Exception {
+        run("wal.normal.cache8m", new DatabaseConfig().setCacheSizeKb(8 * 1024));
+    }
+
+    @Test
+    public void rollbackJournalSynchronousFull() throws Exception {
+        run("truncate.full", new DatabaseConfig().setWriteAheadLogging(false)
+                .setSynchronous(DatabaseConfig.Synchronous.FULL));
+    }
+
+    @Test
+    public void rollbackJournalSynchronousNormal() throws Exception {
+        run("truncate.normal", new DatabaseConfig().setWriteAheadLogging(false));
+    }
+
+    private void run(String name, DatabaseConfig config) throws Exception {
+        File file = new File(folder.getRoot(), "notes.db");
+        try (Connection db = TestDatabase.open(file)) {
+            configure(db, config);
+            String content = Fixtures.text(1500, 1);
+            String body = Fixtures.text(1500, 2);
+            insertNotes(db, NOTES, content);
+
+            try (PreparedStatement updateNote = db.prepareStatement(
+                         "UPDATE notes SET title = ?, content = ?, preview = ?, dateModified = ? WHERE id = ?");
+                 PreparedStatement deleteFts = db.prepareStatement("DELETE FROM notes_fts WHERE rowid = ?");
+                 PreparedStatement insertFts = db.prepareStatement(
+                         "INSERT INTO notes_fts(rowid, title, body) VALUES (?, ?, ?)")) {
+                int[] next = {0};
+                benchmark.measure(name + ".save", () -> {
+                    int id = next[0]++ % NOTES + 1;
+                    db.setAutoCommit(false);
+                    updateNote.setString(1, "Note " + id);
+                    updateNote.setString(2, content);
+                    updateNote.setString(3, content.substring(0, 300));
+                    updateNote.setLong(4, System.currentTimeMillis());
+                    updateNote.setInt(5, id);
+                    updateNote.executeUpdate();
+                    deleteFts.setInt(1, id);
+                    deleteFts.executeUpdate();
+                    insertFts.setInt(1, id);
+                    insertFts.setString(2, "Note " + id);
+                    insertFts.setString(3, body);
+                    insertFts.executeUpdate();
+                    db.commit();
+                    db.setAutoCommit(true);
+                    return null;
+                });
+            }
+
+            benchmark.measure(name + ".import" + IMPORT_BATCH, () -> {
+                insertNotes(db, IMPORT_BATCH, content);
+                return null;
+            });
+        }
+    }
+
+    // The pragmas AppDatabase applies on open
+    private static void configure(Connection db, DatabaseConfig config) throws Exception {
+        try (Statement statement = db.createStatement()) {
+            statement.execute("PRAGMA journal_mode = " + (config.isWriteAheadLogging() ? "WAL" : "TRUNCATE"));
+            statement.execute("PRAGMA synchronous = " + config.getSynchronous().name());
+            statement.execute("PRAGMA cache_size = -" + config.getCacheSizeKb());
+            statement.execute("PRAGMA mmap_size = " + config.getMmapSizeBytes());
+            if (config.isWriteAheadLogging()) {
+                statement.execute("PRAGMA wal_autocheckpoint = " + config.getWalAutoCheckpointPages());
+            }
+        }
+    }
+
+    private static void insertNotes(Connection db, int count, String content) throws Exception {
+        db.setAutoCommit(false);
+        try (PreparedStatement insertNote = db.prepareStatement(
+                     "INSERT INTO notes(title, content, preview, isFavorite, isList, dateCreated, dateModified) " +
+                             "VALUES (?, ?, ?, 0, 0, ?, ?)");
+             PreparedStatement insertFts = db.prepareStatement(
+                     "INSERT INTO notes_fts(rowid, title, body) VALUES (last_insert_rowid(), ?, ?)")) {
+            for (int i = 0; i < count; i++) {
+                long now = System.currentTimeMillis();
+                insertNote.setString(1, "Note " + i);
+                insertNote.setString(2, content);
+                insertNote.setString(3, content.substring(0, 300));
+                insertNote.setLong(4, now);
+                insertNote.setLong(5, now);
+                insertNote.executeUpdate();
+                insertFts.setString(1, "Note " + i);
+                insertFts.setString(2, content);
+                insertFts.executeUpdate();
+            }
+            db.commit();
+        } finally {
+            db.setAutoCommit(true);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.example.noteapp.model.ListItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class ListItemChangesTest {
+    @Test
+    public void everyItemIsInOneGroup() {
+        ListItemChanges changes = new ListItemChanges();
+        ListItem added = item(0, "new");
+        ListItem edited = item(1, "edited");
+
+        changes.itemAdded(added);
+        changes.itemChanged(added);
+        changes.itemMoved(added);
+        changes.itemMoved(edited);
+        changes.itemChanged(edited);
+
+        assertEquals(setOf(added), changes.getAdded());
+        assertEquals(setOf(edited), changes.getChanged());
+        assertTrue(changes.getMoved().isEmpty());
+    }
+
+    @Test
+    public void deletingAnUnsavedItemForgetsIt() {
+        ListItemChanges changes = new ListItemChanges();
+        ListItem added = item(0, "new");
+        ListItem saved = item(3, "saved");
+
+        changes.itemAdded(added);
+        changes.itemDeleted(added);
+        changes.itemChanged(saved);
+        changes.itemDeleted(saved);
+
+        assertTrue(changes.getAdded().isEmpty());
+        assertTrue(changes.getChanged().isEmpty());
+        assertEquals(Arrays.asList(saved), changes.getDeleted());
+    }
+
+    @Test
+    public void takeStartsANewJournal() {
+        ListItemChanges changes = new ListItemChanges();
+        ListItem item = item(1, "a");
+        changes.itemChanged(item);
+
+        ListItemChanges taken = changes.take();
+
+        assertTrue(changes.isEmpty());
+        assertEquals(setOf(item), taken.getChanged());
+    }
+
+    @Test
+    public void restoreLetsLaterEditsWin() {
+        ListItemChanges changes = new ListItemChanges();
+        ListItem moved = item(1, "moved");
+        ListItem deletedLater = item(2, "deleted later");
+        ListItem added = item(0, "added");
+        changes.itemMoved(moved);
+        changes.itemChanged(deletedLater);
+        changes.itemAdded(added);
+        ListItemChanges failed = changes.take();
+
+        // Edits made while the failed write ran
+        changes.itemChanged(moved);
+        changes.itemDeleted(deletedLater);
+        changes.itemChanged(added);
+        changes.restore(failed);
+
+        assertEquals(setOf(added), changes.getAdded());
+        assertEquals(setOf(moved), changes.getChanged());
+        assertTrue(changes.getMoved().isEmpty());
+        assertEquals(Arrays.asList(deletedLater), changes.getDeleted());
+    }
+
+    @Test
+    public void snapshotRecordsTheCopies() {
+        ListItemChanges changes = new ListItemChanges();
+        ListItem first = item(1, "first");
+        ListItem second = item(0, "second");
+        ListItem third = item(0, "third");
+        ListItem deleted = item(4, "deleted");
+        List<ListItem> items = Arrays.asList(first, second, third);
+        changes.itemMoved(first);
+        changes.itemAdded(third);
+        changes.itemAdded(second);
+        changes.itemDeleted(deleted);
+
+        List<ListItem> copies = new ArrayList<>();
+        for (ListItem item : items) copies.add(new ListItem(item));
+        ListItemChanges snapshot = changes.snapshot(items, copies);
+
+        assertEquals(setOf(copies.get(0)), snapshot.getMoved());
+        // In the order they were added
+        List<ListItem> added = new ArrayList<>(snapshot.getAdded());
+        assertSame(copies.get(2), added.get(0));
+        assertSame(copies.get(1), added.get(1));
+        assertEquals(1, snapshot.getDeleted().size());
+        assertNotSame(deleted, snapshot.getDeleted().get(0));
+        assertEquals(4, snapshot.getDeleted().get(0).getId());
+        // The live journal is left alone
+        assertFalse(changes.isEmpty());
+    }
+
+    @Test
+    public void applyIdsCopiesTheWrittenIds() {
+        ListItemChanges changes = new ListItemChanges();
+        ListItem first = item(0, "first");
+        ListItem second = item(0, "second");
+        List<ListItem> items = Arrays.asList(first, second);
+        changes.itemAdded(second);
+        changes.itemAdded(first);
+        List<ListItem> copies = Arrays.asList(new ListItem(first), new ListItem(second));
+        ListItemChanges written = changes.snapshot(items, copies);
+
+        // What the write does to the copies
+        copies.get(0).setId(11);
+        copies.get(1).setId(12);
+        for (ListItem copy : copies) copy.setNoteId(5);
+        changes.applyIds(written);
+
+        assertEquals(11, first.getId());
+        assertEquals(12, second.getId());
+        assertEquals(5, first.getNoteId());
+        assertEquals(5, second.getNoteId());
+    }
+
+    private static ListItem item(int id, String text) {
+        ListItem item = new ListItem(text, false);
+        item.setId(id);
+        return item;
+    }
+
+    private static Set<ListItem> setOf(ListItem... items) {
+        return new HashSet<>(Arrays.asList(items));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.noteapp.benchmark.Benchmark;
+import com.example.noteapp.benchmark.Fixtures;
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.perf.PerfTrace;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Parse and serialize times of list note JSON, the format of the archive and of list notes
+// before database version 4. The *.gsonReflective results are the code path ListItemJson
+// replaced, a new Gson with reflective adapters for every call, for comparison.
+public class ListItemJsonBenchmark {
+    private static final int[] SIZES = {10, 200, 2000};
+
+    private static Benchmark benchmark;
+
+    @BeforeClass
+    public static void setUp() {
+        PerfTrace.setSystemTraceEnabled(false);
+        benchmark = new Benchmark("ListItemJson");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        benchmark.write();
+    }
+
+    @Test
+    public void parse() throws Exception {
+        for (int size : SIZES) {
+            String json = ListItemJson.ADAPTER.toJson(Fixtures.listItems(size, size));
+            benchmark.measure("fromJson.items" + size, () -> ListItemJson.fromJson(json));
+            assertEquals(size, ListItemJson.fromJson(json).size());
+        }
+    }
+
+    @Test
+    public void serialize() throws Exception {
+        for (int size : SIZES) {
+            List<ListItem> items = Fixtures.listItems(size, size);
+            benchmark.measure("toJson.items" + size, () -> ListItemJson.ADAPTER.toJson(items));
+        }
+    }
+
+    @Test
+    public void parseWithReflectiveGson() throws Exception {
+        for (int size : SIZES) {
+            String json = ListItemJson.ADAPTER.toJson(Fixtures.listItems(size, size));
+            benchmark.measure("fromJson.gsonReflective.items" + size, () -> {
+                Type type = new TypeToken<List<ListItem>>(){}.getType();
+                return new Gson().<List<ListItem>>fromJson(json, type);
+            });
+        }
+    }
+
+    @Test
+    public void serializeWithReflectiveGson() throws Exception {
+        for (int size : SIZES) {
+            List<ListItem> items = Fixtures.listItems(size, size);
+            benchmark.measure("toJson.gsonReflective.items" + size, () -> new Gson().toJson(items));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.perf.PerfTrace;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ListItemJsonTest {
+    @BeforeClass
+    public static void setUp() {
+        PerfTrace.setSystemTraceEnabled(false);
+    }
+
+    @Test
+    public void writesTextAndCheckedOnly() throws Exception {
+        ListItem item = new ListItem("Milk \"2%\"", true);
+        item.setId(7);
+        item.setPosition(3);
+
+        assertEquals("[{\"text\":\"Milk \\\"2%\\\"\",\"isChecked\":true}]",
+                ListItemJson.ADAPTER.toJson(Arrays.asList(item)));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        List<ListItem> items = Arrays.asList(new ListItem("Bread", false), new ListItem("Café ☕", true),
+                new ListItem("", false));
+
+        List<ListItem> parsed = ListItemJson.fromJson(ListItemJson.ADAPTER.toJson(items));
+
+        assertEquals(3, parsed.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(items.get(i).getText(), parsed.get(i).getText());
+            assertEquals(items.get(i).isChecked(), parsed.get(i).isChecked());
+        }
+    }
+
+    @Test
+    public void readsNullTextAndSkipsUnknownFields() throws Exception {
+        List<ListItem> parsed = ListItemJson.fromJson(
+                "[{\"text\":null,\"isChecked\":true,\"id\":4,\"extra\":{\"a\":[1,2]}},{\"text\":\"b\"}]");
+
+        assertEquals(2, parsed.size());
+        assertNull(parsed.get(0).getText());
+        assertTrue(parsed.get(0).isChecked());
+        assertEquals(0, parsed.get(0).getId());
+        assertEquals("b", parsed.get(1).getText());
+        assertFalse(parsed.get(1).isChecked());
+    }
+
+    @Test
+    public void emptyInput() throws Exception {
+        assertNull(ListItemJson.fromJson(null));
+        assertNull(ListItemJson.fromJson(""));
+        assertNull(ListItemJson.fromJson("null"));
+        assertTrue(ListItemJson.fromJson("[]").isEmpty());
+    }
+
+    @Test(expected = Exception.class)
+    public void malformedInput() throws Exception {
+        ListItemJson.fromJson("[{\"text\":");
+    }
+}
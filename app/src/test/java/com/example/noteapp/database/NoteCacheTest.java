@@ -0,0 +1,114 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.model.Note;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+
+public class NoteCacheTest {
+    // The editor saves a content edit, then a title-only edit from a note that still holds
+    // the content it was opened with
+    @Test
+    public void metadataSaveKeepsTheContentLastWritten() {
+        NoteCache cache = new NoteCache(NoteCache.DEFAULT_MAX_NOTES, NoteCache.DEFAULT_MAX_CHARS);
+        Note opened = note(1, "Title", "old text");
+        cache.putRead(opened, cache.getWriteVersion());
+
+        Note contentSave = new Note(opened);
+        contentSave.setContent("new text");
+        cache.putWritten(contentSave);
+
+        Date renamed = new Date(2000);
+        cache.updateMetadata(1, "Renamed", true, renamed);
+
+        Note cached = cache.get(1);
+        assertEquals("new text", cached.getContent());
+        assertEquals("Renamed", cached.getTitle());
+        assertTrue(cached.isFavorite());
+        assertEquals(renamed, cached.getDateModified());
+    }
+
+    @Test
+    public void metadataSaveKeepsTheItems() {
+        NoteCache cache = new NoteCache(NoteCache.DEFAULT_MAX_NOTES, NoteCache.DEFAULT_MAX_CHARS);
+        Note note = note(1, "List", null);
+        note.setList(true);
+        cache.putWritten(note, Arrays.asList(new ListItem("milk", false), new ListItem("bread", true)));
+
+        cache.updateMetadata(1, "Groceries", false, new Date(2000));
+
+        assertTrue(cache.contains(1));
+        List<ListItem> items = cache.getItems(1);
+        assertEquals(2, items.size());
+        assertEquals("bread", items.get(1).getText());
+        assertEquals("Groceries", cache.get(1).getTitle());
+    }
+
+    @Test
+    public void metadataSaveOfAnUncachedNoteCachesNothing() {
+        NoteCache cache = new NoteCache(NoteCache.DEFAULT_MAX_NOTES, NoteCache.DEFAULT_MAX_CHARS);
+        long version = cache.getWriteVersion();
+
+        cache.updateMetadata(1, "Renamed", false, new Date(2000));
+
+        assertNull(cache.get(1));
+        // A read that started before the write must not cache the old row
+        cache.putRead(note(1, "Title", "text"), version);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void cachedNotesAreCopies() {
+        NoteCache cache = new NoteCache(NoteCache.DEFAULT_MAX_NOTES, NoteCache.DEFAULT_MAX_CHARS);
+        Note note = note(1, "Title", "text");
+        cache.putWritten(note);
+        note.setContent("changed after the write");
+        cache.get(1).setContent("changed by a reader");
+
+        assertEquals("text", cache.get(1).getContent());
+    }
+
+    @Test
+    public void leastRecentlyUsedNoteIsEvicted() {
+        NoteCache cache = new NoteCache(2, NoteCache.DEFAULT_MAX_CHARS);
+        cache.putWritten(note(1, "a", "a"));
+        cache.putWritten(note(2, "b", "b"));
+        assertNotNull(cache.get(1));
+
+        cache.putWritten(note(3, "c", "c"));
+
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+    }
+
+    @Test
+    public void longerTitleCanEvictOtherNotes() {
+        NoteCache cache = new NoteCache(10, 1000);
+        cache.putWritten(note(1, "a", "a"));
+        cache.putWritten(note(2, "b", "b"));
+
+        char[] title = new char[450];
+        Arrays.fill(title, 't');
+        cache.updateMetadata(2, new String(title), false, new Date(2000));
+        cache.updateMetadata(1, new String(title), false, new Date(2000));
+
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(1));
+    }
+
+    private static Note note(int id, String title, String content) {
+        Note note = new Note(title, content, false);
+        note.setId(id);
+        note.setDateModified(new Date(1000));
+        return note;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertNotNull;
+
+import com.example.noteapp.benchmark.Benchmark;
+import com.example.noteapp.benchmark.Fixtures;
+import com.example.noteapp.perf.PerfTrace;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Time of compressing a note body on save and inflating it on open
+public class NoteContentCodecBenchmark {
+    private static final int[] SIZES = {4 * 1024, 64 * 1024, 1024 * 1024};
+
+    private static Benchmark benchmark;
+
+    @BeforeClass
+    public static void setUp() {
+        PerfTrace.setSystemTraceEnabled(false);
+        benchmark = new Benchmark("NoteContentCodec");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        benchmark.write();
+    }
+
+    @Test
+    public void compress() throws Exception {
+        for (int chars : SIZES) {
+            String text = Fixtures.text(chars, chars);
+            benchmark.measure("compress.chars" + chars, () -> NoteContentCodec.compress(text));
+        }
+    }
+
+    @Test
+    public void decompress() throws Exception {
+        for (int chars : SIZES) {
+            byte[] data = NoteContentCodec.compress(Fixtures.text(chars, chars));
+            assertNotNull(data);
+            benchmark.report("ratio.chars" + chars, (double) chars / data.length, "chars/byte");
+            benchmark.measure("decompress.chars" + chars, () -> NoteContentCodec.decompress(data));
+        }
+    }
+}
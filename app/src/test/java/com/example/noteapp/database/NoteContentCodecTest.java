@@ -0,0 +1,138 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.noteapp.benchmark.Fixtures;
+import com.example.noteapp.model.Note;
+import com.example.noteapp.perf.PerfTrace;
+import java.util.Arrays;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class NoteContentCodecTest {
+    @BeforeClass
+    public static void setUp() {
+        PerfTrace.setSystemTraceEnabled(false);
+    }
+
+    @Test
+    public void roundTrip() {
+        for (int chars : new int[] {NoteContentCodec.COMPRESS_THRESHOLD_CHARS, 100_000, 1024 * 1024}) {
+            String text = Fixtures.text(chars, chars);
+            byte[] data = NoteContentCodec.compress(text);
+            assertNotNull(data);
+            assertTrue(data.length < text.length());
+            assertEquals(text, NoteContentCodec.decompress(data));
+        }
+    }
+
+    @Test
+    public void roundTripOfCharactersOutsideTheBmp() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 4096) text.append("notes 📝 ünïcödé ");
+        byte[] data = NoteContentCodec.compress(text.toString());
+        assertEquals(text.toString(), NoteContentCodec.decompress(data));
+    }
+
+    @Test
+    public void shortTextIsKeptAsItIs() {
+        assertNull(NoteContentCodec.compress(null));
+        assertNull(NoteContentCodec.compress(Fixtures.text(NoteContentCodec.COMPRESS_THRESHOLD_CHARS - 1, 1)));
+    }
+
+    @Test
+    public void encodeKeepsTheCallersNote() {
+        String content = Fixtures.text(10_000, 1);
+        Note note = new Note("Title", content, false);
+
+        Note row = NoteContentCodec.encode(note);
+
+        assertEquals(content, note.getContent());
+        assertNull(row.getContent());
+        assertNotNull(row.getCompressedContent());
+        assertEquals(content, NoteContentCodec.decode(row).getContent());
+        assertNull(row.getCompressedContent());
+    }
+
+    @Test
+    public void encodeOfShortContentWritesItAsItIs() {
+        Note note = new Note("Title", "Short", false);
+        assertSame(note, NoteContentCodec.encode(note));
+        assertNull(note.getCompressedContent());
+    }
+
+    @Test
+    public void truncatedInputIsRejected() {
+        byte[] data = NoteContentCodec.compress(Fixtures.text(50_000, 1));
+        for (int length : new int[] {0, 3, 5, 6, data.length / 2, data.length - 1}) {
+            try {
+                NoteContentCodec.decompress(Arrays.copyOf(data, length));
+                fail("Accepted " + length + " of " + data.length + " bytes");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void corruptInputIsRejected() {
+        byte[] data = NoteContentCodec.compress(Fixtures.text(50_000, 1));
+
+        byte[] unknownVersion = data.clone();
+        unknownVersion[0] = 2;
+        assertRejected(unknownVersion);
+
+        byte[] corrupt = data.clone();
+        for (int i = 5; i < 12; i++) corrupt[i] ^= 0x5a;
+        assertRejected(corrupt);
+
+        // A length in the header beyond the text inflates short of it
+        byte[] wrongLength = data.clone();
+        wrongLength[2]++;
+        assertRejected(wrongLength);
+    }
+
+    @Test
+    public void negativeLengthIsRejected() {
+        byte[] data = NoteContentCodec.compress(Fixtures.text(50_000, 1));
+        data[1] = (byte) 0x80;
+        assertRejected(data);
+    }
+
+    // The header is checked before the output is allocated, a truncated blob claiming a huge
+    // text must not allocate it
+    @Test
+    public void lengthBeyondWhatTheStreamCanHoldIsRejected() {
+        byte[] data = NoteContentCodec.compress(Fixtures.text(50_000, 1));
+        byte[] truncated = Arrays.copyOf(data, 16);
+        truncated[1] = 0x7f;
+        truncated[2] = (byte) 0xff;
+        truncated[3] = (byte) 0xff;
+        truncated[4] = (byte) 0xf0;
+        assertRejected(truncated);
+    }
+
+    // The pooled inflaters must come back clean after a failure
+    @Test
+    public void decodesAfterFailures() {
+        String text = Fixtures.text(20_000, 3);
+        byte[] data = NoteContentCodec.compress(text);
+        for (int i = 0; i < 10; i++) {
+            assertRejected(Arrays.copyOf(data, data.length / 2));
+        }
+        assertArrayEquals(text.toCharArray(), NoteContentCodec.decompress(data).toCharArray());
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            NoteContentCodec.decompress(data);
+            fail("Accepted corrupt data");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.noteapp.benchmark.Benchmark;
+import com.example.noteapp.benchmark.Fixtures;
+import com.example.noteapp.model.Note;
+import com.example.noteapp.model.NoteSearchMatch;
+import com.example.noteapp.perf.PerfTrace;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+// The write, list and search paths of NoteDao against tables of 1k, 10k and 100k notes.
+// The list and search queries are NoteDao's own constants. The row writes are the statements
+// Room generates for @Insert and @Update, together with the full-text rows NoteDao writes
+// next to them. Each write runs in its own transaction, as the @Transaction methods do, and
+// is rolled back so the table keeps its size while it is measured.
+@RunWith(Parameterized.class)
+public class NoteDaoBenchmark {
+    private static final int PAGE_SIZE = 50;
+    private static final int SEARCH_LIMIT = 100;
+    // Every note has some of the common fixture words, one in RARE_EVERY has this one too
+    private static final String RARE_WORD = "zebra";
+    private static final int RARE_EVERY = 1000;
+
+    private static final String INSERT_NOTE_ROW = "INSERT OR ABORT INTO `notes` (`id`,`title`,`content`," +
+            "`compressedContent`,`preview`,`isFavorite`,`isList`,`dateCreated`,`dateModified`) " +
+            "VALUES (nullif(?, 0),?,?,?,?,?,?,?,?)";
+    private static final String UPDATE_NOTE_ROW = "UPDATE OR ABORT `notes` SET `id` = ?,`title` = ?," +
+            "`content` = ?,`compressedContent` = ?,`preview` = ?,`isFavorite` = ?,`isList` = ?," +
+            "`dateCreated` = ?,`dateModified` = ? WHERE `id` = ?";
+
+    private static Benchmark benchmark;
+    // The table of the size being measured, the tests of one size run one after the other
+    private static Connection db;
+    private static int dbSize;
+
+    @Parameterized.Parameter
+    public int size;
+
+    @Parameterized.Parameters(name = "{0} notes")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][] {{1_000}, {10_000}, {100_000}});
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        PerfTrace.setSystemTraceEnabled(false);
+        benchmark = new Benchmark("NoteDao");
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        if (db != null) db.close();
+        benchmark.write();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        if (db != null && dbSize == size) return;
+        if (db != null) db.close();
+        db = TestDatabase.openInMemory();
+        dbSize = size;
+        long start = System.nanoTime();
+        db.setAutoCommit(false);
+        try (Writer writer = new Writer(db)) {
+            for (int i = 0; i < size; i++) {
+                writer.insert(note(i));
+            }
+        }
+        db.commit();
+        db.setAutoCommit(true);
+        try (Statement statement = db.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+        benchmark.report("populate." + size, (System.nanoTime() - start) / 1e6, "ms");
+    }
+
+    @Test
+    public void insertNote() throws Exception {
+        Note note = note(size);
+        try (Writer writer = new Writer(db)) {
+            measureWrite("insertNote." + size, () -> writer.insert(new Note(note)));
+        }
+    }
+
+    @Test
+    public void updateNote() throws Exception {
+        Random random = new Random(size);
+        try (Writer writer = new Writer(db)) {
+            measureWrite("updateNote." + size, () -> {
+                int id = 1 + random.nextInt(size);
+                Note note = note(id - 1);
+                note.setId(id);
+                note.setContent(note.getContent() + " edited");
+                writer.update(note);
+                return id;
+            });
+        }
+    }
+
+    @Test
+    public void firstPage() throws Exception {
+        try (PreparedStatement query = db.prepareStatement(NoteDao.NOTES_FIRST_PAGE_QUERY)) {
+            query.setInt(1, PAGE_SIZE);
+            benchmark.measure("firstPage." + size, () -> countRows(query));
+            assertEquals(PAGE_SIZE, countRows(query));
+        }
+    }
+
+    // A page from the middle of the regular notes, as reached by scrolling
+    @Test
+    public void pageAfter() throws Exception {
+        int middle = size / 2;
+        try (PreparedStatement query = db.prepareStatement(NoteDao.GROUP_PAGE_AFTER_QUERY)) {
+            query.setBoolean(1, false);
+            query.setLong(2, dateModified(middle));
+            query.setInt(3, middle + 1);
+            query.setInt(4, PAGE_SIZE);
+            benchmark.measure("pageAfter." + size, () -> countRows(query));
+            assertEquals(PAGE_SIZE, countRows(query));
+        }
+    }
+
+    // A word in nearly every note, so every note is ranked
+    @Test
+    public void searchCommonWord() throws Exception {
+        String matchQuery = NoteSearch.buildMatchQuery("milk");
+        benchmark.measure("searchCommonWord." + size, () -> search(matchQuery));
+        assertEquals(SEARCH_LIMIT, search(matchQuery));
+    }
+
+    @Test
+    public void searchRareWord() throws Exception {
+        String matchQuery = NoteSearch.buildMatchQuery(RARE_WORD);
+        benchmark.measure("searchRareWord." + size, () -> search(matchQuery));
+        assertTrue(search(matchQuery) > 0);
+    }
+
+    // As NoteDao.searchNotes: ranks every match, then makes snippets for the best ones
+    private static int search(String matchQuery) throws Exception {
+        List<NoteSearchMatch> matches = new ArrayList<>();
+        try (PreparedStatement query = db.prepareStatement(NoteDao.MATCHES_QUERY)) {
+            query.setString(1, matchQuery);
+            try (ResultSet rows = query.executeQuery()) {
+                while (rows.next()) {
+                    NoteSearchMatch match = new NoteSearchMatch();
+                    match.setId(rows.getInt(1));
+                    match.setDateModified(new Date(rows.getLong(2)));
+                    match.setMatchInfo(rows.getBytes(3));
+                    matches.add(match);
+                }
+            }
+        }
+        List<NoteSearchMatch> top = NoteSearch.top(matches, SEARCH_LIMIT);
+        if (top.isEmpty()) return 0;
+
+        // Room expands the list parameter into one placeholder per id
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < top.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        String sql = NoteDao.SEARCH_RESULTS_QUERY.replace(":ids", placeholders);
+        try (PreparedStatement query = db.prepareStatement(sql)) {
+            query.setString(1, matchQuery);
+            for (int i = 0; i < top.size(); i++) {
+                query.setInt(i + 2, top.get(i).getId());
+            }
+            return countRows(query);
+        }
+    }
+
+    private static void measureWrite(String name, Benchmark.Operation write) throws Exception {
+        db.setAutoCommit(false);
+        try {
+            benchmark.measure(name, () -> {
+                try {
+                    return write.run();
+                } finally {
+                    db.rollback();
+                }
+            });
+        } finally {
+            db.setAutoCommit(true);
+        }
+    }
+
+    private static int countRows(PreparedStatement query) throws Exception {
+        int rows = 0;
+        try (ResultSet result = query.executeQuery()) {
+            while (result.next()) rows++;
+        }
+        return rows;
+    }
+
+    // Mostly short notes and some long enough to be stored compressed, one in ten a favorite
+    private static Note note(int i) {
+        int chars = i % 20 == 0 ? 4096 : 200 + i % 800;
+        String content = Fixtures.text(chars, i);
+        if (i % RARE_EVERY == 0) content += "\n" + RARE_WORD;
+        Note note = new Note("Note " + i, content, false);
+        note.setFavorite(i % 10 == 0);
+        note.setDateCreated(new Date(dateModified(i)));
+        note.setDateModified(new Date(dateModified(i)));
+        return note;
+    }
+
+    private static long dateModified(int i) {
+        return 1_000_000L + i * 1000L;
+    }
+
+    // The statements of NoteDao.insertNote and NoteDao.updateNote for a text note
+    private static final class Writer implements AutoCloseable {
+        private final PreparedStatement insertRow;
+        private final PreparedStatement updateRow;
+        private final PreparedStatement insertFts;
+        private final PreparedStatement deleteFts;
+
+        Writer(Connection db) throws Exception {
+            insertRow = db.prepareStatement(INSERT_NOTE_ROW, Statement.RETURN_GENERATED_KEYS);
+            updateRow = db.prepareStatement(UPDATE_NOTE_ROW);
+            insertFts = db.prepareStatement(NoteDao.INSERT_FTS_QUERY);
+            deleteFts = db.prepareStatement(NoteDao.DELETE_FTS_QUERY);
+        }
+
+        long insert(Note note) throws Exception {
+            note.setPreview(NotePreviewBuilder.build(note));
+            bindRow(insertRow, NoteContentCodec.encode(note));
+            insertRow.executeUpdate();
+            long id;
+            try (ResultSet keys = insertRow.getGeneratedKeys()) {
+                keys.next();
+                id = keys.getLong(1);
+            }
+            insertFtsRow((int) id, note);
+            return id;
+        }
+
+        void update(Note note) throws Exception {
+            note.setPreview(NotePreviewBuilder.build(note));
+            bindRow(updateRow, NoteContentCodec.encode(note));
+            updateRow.setInt(10, note.getId());
+            updateRow.executeUpdate();
+            deleteFts.setInt(1, note.getId());
+            deleteFts.executeUpdate();
+            insertFtsRow(note.getId(), note);
+        }
+
+        private void insertFtsRow(int id, Note note) throws Exception {
+            insertFts.setInt(1, id);
+            insertFts.setString(2, note.getTitle());
+            insertFts.setString(3, NoteSearch.searchableText(note));
+            insertFts.executeUpdate();
+        }
+
+        private static void bindRow(PreparedStatement statement, Note row) throws Exception {
+            statement.setInt(1, row.getId());
+            statement.setString(2, row.getTitle());
+            statement.setString(3, row.getContent());
+            statement.setBytes(4, row.getCompressedContent());
+            statement.setString(5, row.getPreview());
+            statement.setBoolean(6, row.isFavorite());
+            statement.setBoolean(7, row.isList());
+            statement.setLong(8, row.getDateCreated().getTime());
+            statement.setLong(9, row.getDateModified().getTime());
+        }
+
+        @Override
+        public void close() throws Exception {
+            insertRow.close();
+            updateRow.close();
+            insertFts.close();
+            deleteFts.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.noteapp.benchmark.Benchmark;
+import com.example.noteapp.benchmark.Fixtures;
+import com.example.noteapp.model.ListItem;
+import com.example.noteapp.model.Note;
+import com.example.noteapp.perf.PerfTrace;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Cost of the preview column, built on every save of a note
+public class NotePreviewBuilderBenchmark {
+    private static Benchmark benchmark;
+
+    @BeforeClass
+    public static void setUp() {
+        PerfTrace.setSystemTraceEnabled(false);
+        benchmark = new Benchmark("NotePreviewBuilder");
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        benchmark.write();
+    }
+
+    @Test
+    public void textNote() throws Exception {
+        for (int chars : new int[] {200, 100_000}) {
+            Note note = new Note("Title", Fixtures.text(chars, chars), false);
+            benchmark.measure("build.chars" + chars, () -> NotePreviewBuilder.build(note));
+        }
+    }
+
+    @Test
+    public void listNote() throws Exception {
+        for (int size : new int[] {10, 2000}) {
+            List<ListItem> items = Fixtures.listItems(size, size);
+            benchmark.measure("buildList.items" + size, () -> NotePreviewBuilder.buildList(items));
+        }
+    }
+
+    // List notes stored as JSON in the content column, converted by the version 4 migration
+    @Test
+    public void legacyListContent() throws Exception {
+        String json = ListItemJson.ADAPTER.toJson(Fixtures.listItems(2000, 1));
+        benchmark.measure("build.legacyJson.items2000", () -> NotePreviewBuilder.build(json, true));
+        assertEquals(NotePreviewBuilder.buildList(ListItemJson.fromJson(json)),
+                NotePreviewBuilder.build(json, true));
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.noteapp.model.ListItem;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class NotePreviewBuilderTest {
+    @Test
+    public void leadingItemsEndAtTheLastPreviewedItem() {
+        List<ListItem> items = items("a", "", "  ", "b", "c", "d", "e");
+
+        assertEquals(5, NotePreviewBuilder.leadingItemCount(items));
+    }
+
+    @Test
+    public void leadingItemsOfAShortListAreAllItems() {
+        assertEquals(3, NotePreviewBuilder.leadingItemCount(items("a", "", "b")));
+        assertEquals(0, NotePreviewBuilder.leadingItemCount(new ArrayList<>()));
+    }
+
+    // An edit past the leading items does not change the preview
+    @Test
+    public void previewOnlyReadsTheLeadingItems() {
+        List<ListItem> items = items("a", "", "b", "c", "d", "e");
+        String preview = NotePreviewBuilder.buildList(items);
+
+        int leadingCount = NotePreviewBuilder.leadingItemCount(items);
+        for (int i = leadingCount; i < items.size(); i++) {
+            items.get(i).setText("changed");
+            items.get(i).setChecked(true);
+        }
+
+        assertEquals(preview, NotePreviewBuilder.buildList(items));
+    }
+
+    private static List<ListItem> items(String... texts) {
+        List<ListItem> items = new ArrayList<>();
+        for (String text : Arrays.asList(texts)) {
+            items.add(new ListItem(text, false));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// The list queries of NoteDao have to be served in order by the (isFavorite, dateModified)
+// index, a temp B-tree means SQLite sorts the whole table for every page
+public class NoteQueryPlanTest {
+    private Connection db;
+
+    @Before
+    public void setUp() throws Exception {
+        db = TestDatabase.openInMemory();
+        // Enough rows with statistics that the planner does not pick a plan for an empty table
+        try (Statement statement = db.createStatement()) {
+            statement.execute("WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 2000) " +
+                    "INSERT INTO notes(title, preview, isFavorite, isList, dateCreated, dateModified) " +
+                    "SELECT 'Note ' || i, 'Preview', i % 10 = 0, 0, i * 1000, i * 1000 FROM n");
+            statement.execute("ANALYZE");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Test
+    public void notesFirstPage() throws Exception {
+        assertIndexOrdered(plan(NoteDao.NOTES_FIRST_PAGE_QUERY, 50));
+    }
+
+    @Test
+    public void notesPageAfter() throws Exception {
+        assertIndexOrdered(plan(NoteDao.GROUP_PAGE_AFTER_QUERY, 0, 1_000_000L, 1000, 50));
+    }
+
+    @Test
+    public void favoriteNotesFirstPage() throws Exception {
+        assertIndexOrdered(plan(NoteDao.GROUP_FIRST_PAGE_QUERY, 1, 50));
+    }
+
+    @Test
+    public void favoriteNotesPageAfter() throws Exception {
+        assertIndexOrdered(plan(NoteDao.GROUP_PAGE_AFTER_QUERY, 1, 1_000_000L, 1000, 50));
+    }
+
+    // Bound in the order the named parameters first appear in the query
+    private List<String> plan(String query, Object... args) throws Exception {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement statement = db.prepareStatement("EXPLAIN QUERY PLAN " + query)) {
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    plan.add(rows.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static void assertIndexOrdered(List<String> plan) {
+        String text = String.join("\n", plan);
+        assertFalse("Sorts with a temp B-tree:\n" + text, text.contains("USE TEMP B-TREE"));
+        assertTrue("Does not use the index:\n" + text, text.contains("index_notes_isFavorite_dateModified"));
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.noteapp.model.NoteSearchMatch;
+import com.example.noteapp.model.NoteSummary;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+
+public class NoteSearchTest {
+    @Test
+    public void buildMatchQueryMakesPrefixTerms() {
+        assertEquals("\"milk*\" \"bread*\"", NoteSearch.buildMatchQuery("  milk   bread "));
+    }
+
+    @Test
+    public void buildMatchQueryDropsQuerySyntax() {
+        assertEquals("\"ab*\" \"c*\"", NoteSearch.buildMatchQuery("\"a*b\" -c ^():"));
+        assertNull(NoteSearch.buildMatchQuery(" * - \" "));
+        assertNull(NoteSearch.buildMatchQuery(null));
+    }
+
+    @Test
+    public void scoreWeighsTitleHitsTwice() {
+        // One phrase, title and body column
+        double titleHit = NoteSearch.score(matchInfo(1, 2, 1, 4, 2, 0, 8, 4));
+        double bodyHit = NoteSearch.score(matchInfo(1, 2, 0, 4, 2, 1, 4, 2));
+
+        assertEquals(2.0 / 4, titleHit, 1e-9);
+        assertEquals(1.0 / 4, bodyHit, 1e-9);
+    }
+
+    @Test
+    public void scoreSumsPhrases() {
+        double score = NoteSearch.score(matchInfo(2, 2,
+                1, 2, 1, 0, 0, 0,
+                0, 0, 0, 3, 6, 2));
+
+        assertEquals(2.0 / 2 + 3.0 / 6, score, 1e-9);
+    }
+
+    @Test
+    public void scoreOfMissingMatchInfo() {
+        assertEquals(0, NoteSearch.score(null), 0);
+        assertEquals(0, NoteSearch.score(new byte[4]), 0);
+    }
+
+    // The blob SQLite returns is read the way score() expects it
+    @Test
+    public void scoreOfSqliteMatchInfo() throws Exception {
+        try (Connection db = TestDatabase.openInMemory(); Statement statement = db.createStatement()) {
+            statement.execute("INSERT INTO notes_fts(rowid, title, body) VALUES (1, 'milk', 'bread')");
+            statement.execute("INSERT INTO notes_fts(rowid, title, body) VALUES (2, 'bread', 'milk and milk')");
+
+            double[] scores = new double[3];
+            try (ResultSet rows = statement.executeQuery("SELECT rowid, matchinfo(notes_fts, 'pcx') " +
+                    "FROM notes_fts WHERE notes_fts MATCH '\"milk*\"'")) {
+                while (rows.next()) {
+                    scores[rows.getInt(1)] = NoteSearch.score(rows.getBytes(2));
+                }
+            }
+
+            assertEquals(2.0 * 1 / 1, scores[1], 1e-9);
+            assertEquals(1.0 * 2 / 2, scores[2], 1e-9);
+        }
+    }
+
+    @Test
+    public void topOrdersByScoreThenDateThenId() {
+        NoteSearchMatch low = match(1, 100, matchInfo(1, 1, 1, 4, 1));
+        NoteSearchMatch highOld = match(2, 100, matchInfo(1, 1, 1, 1, 1));
+        NoteSearchMatch highNew = match(3, 200, matchInfo(1, 1, 1, 1, 1));
+        NoteSearchMatch highNewerId = match(4, 200, matchInfo(1, 1, 1, 1, 1));
+
+        List<NoteSearchMatch> top = NoteSearch.top(Arrays.asList(low, highOld, highNew, highNewerId), 10);
+
+        assertEquals(Arrays.asList(4, 3, 2, 1), ids(top));
+    }
+
+    @Test
+    public void topKeepsTheBestOfAllMatches() {
+        List<NoteSearchMatch> matches = new ArrayList<>();
+        for (int id = 1; id <= 1000; id++) {
+            // Every 100th note has all hits of the term, the rest share one
+            int hits = id % 100 == 0 ? 10 : 1;
+            matches.add(match(id, id, matchInfo(1, 1, hits, 20, 11)));
+        }
+        Collections.shuffle(matches);
+
+        List<NoteSearchMatch> top = NoteSearch.top(matches, 3);
+
+        assertEquals(Arrays.asList(1000, 900, 800), ids(top));
+    }
+
+    @Test
+    public void topWithoutLimit() {
+        assertTrue(NoteSearch.top(Arrays.asList(match(1, 1, null)), 0).isEmpty());
+        assertTrue(NoteSearch.top(new ArrayList<>(), 10).isEmpty());
+    }
+
+    @Test
+    public void inOrderOfFollowsIdsAndSkipsMissing() {
+        List<NoteSummary> notes = Arrays.asList(summary(1), summary(2), summary(3));
+
+        List<NoteSummary> ordered = NoteSearch.inOrderOf(Arrays.asList(3, 5, 1, 2), notes);
+
+        assertEquals(3, ordered.size());
+        assertEquals(3, ordered.get(0).getId());
+        assertEquals(1, ordered.get(1).getId());
+        assertEquals(2, ordered.get(2).getId());
+    }
+
+    // matchinfo 'pcx' blob in native byte order, as SQLite returns it
+    private static byte[] matchInfo(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.nativeOrder());
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static NoteSearchMatch match(int id, long dateModified, byte[] matchInfo) {
+        NoteSearchMatch match = new NoteSearchMatch();
+        match.setId(id);
+        match.setDateModified(new Date(dateModified));
+        match.setMatchInfo(matchInfo);
+        return match;
+    }
+
+    private static NoteSummary summary(int id) {
+        NoteSummary note = new NoteSummary();
+        note.setId(id);
+        return note;
+    }
+
+    private static List<Integer> ids(List<NoteSearchMatch> matches) {
+        List<Integer> ids = new ArrayList<>();
+        for (NoteSearchMatch match : matches) {
+            ids.add(match.getId());
+        }
+        return ids;
+    }
+}
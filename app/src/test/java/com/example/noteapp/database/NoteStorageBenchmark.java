@@ -0,0 +1,158 @@
+package com.example.noteapp.database;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.noteapp.benchmark.Benchmark;
+import com.example.noteapp.benchmark.Fixtures;
+import com.example.noteapp.perf.PerfTrace;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Database size and read throughput with large note bodies stored compressed, as NoteDao
+// writes them, against the same notes stored as plain text in the content column.
+// Both also get the full-text rows NoteDao writes. The notes_fts table keeps a plain copy of
+// every body in notes_fts_content, for snippet(), so compression only shrinks the notes table:
+// fileSize is the whole saving and ftsContentSize the part of the file it cannot reach.
+// A contentless or external-content FTS4 table would drop that copy, but snippet() needs the
+// text and the body is not a column of notes (it is compressed, or list items), so it stays.
+public class NoteStorageBenchmark {
+    private static final int NOTES = 500;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static Benchmark benchmark;
+    private static String[] contents;
+
+    @BeforeClass
+    public static void setUp() {
+        PerfTrace.setSystemTraceEnabled(false);
+        benchmark = new Benchmark("NoteStorage");
+        // Mostly short notes and some long ones, from 200 to about 100k characters
+        Random random = new Random(1);
+        contents = new String[NOTES];
+        for (int i = 0; i < NOTES; i++) {
+            int chars = i % 5 == 0 ? 2048 + random.nextInt(100_000) : 200 + random.nextInt(1800);
+            contents[i] = Fixtures.text(chars, i);
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        benchmark.write();
+    }
+
+    @Test
+    public void raw() throws Exception {
+        run("raw", false);
+    }
+
+    @Test
+    public void compressed() throws Exception {
+        run("compressed", true);
+    }
+
+    private static void run(String name, boolean compress) throws Exception {
+        File file = folder.newFile(name + ".db");
+        file.delete();
+        try (Connection db = TestDatabase.open(file)) {
+            try (Statement statement = db.createStatement()) {
+                statement.execute("PRAGMA journal_mode = TRUNCATE");
+            }
+            write(db, compress);
+            try (Statement statement = db.createStatement()) {
+                statement.execute("VACUUM");
+            }
+            benchmark.report(name + ".fileSize", file.length(), "bytes");
+            try (Statement statement = db.createStatement();
+                 ResultSet size = statement.executeQuery(
+                         "SELECT sum(length(CAST(c0title AS BLOB)) + length(CAST(c1body AS BLOB))) " +
+                                 "FROM notes_fts_content")) {
+                size.next();
+                benchmark.report(name + ".ftsContentSize", size.getLong(1), "bytes");
+            }
+
+            // Every note in full, as opening each of them would
+            try (PreparedStatement readNote = db.prepareStatement(
+                    "SELECT content, compressedContent FROM notes WHERE id = ?")) {
+                int[] next = {0};
+                benchmark.measure(name + ".readNote", () -> {
+                    readNote.setInt(1, next[0]++ % NOTES + 1);
+                    try (ResultSet row = readNote.executeQuery()) {
+                        row.next();
+                        return content(row);
+                    }
+                });
+            }
+
+            // The list screen, which reads the summary columns only
+            try (PreparedStatement firstPage = db.prepareStatement(NoteDao.NOTES_FIRST_PAGE_QUERY)) {
+                firstPage.setInt(1, 50);
+                benchmark.measure(name + ".listFirstPage", () -> {
+                    int rows = 0;
+                    try (ResultSet result = firstPage.executeQuery()) {
+                        while (result.next()) rows++;
+                    }
+                    return rows;
+                });
+            }
+
+            assertEquals(contents[7], readContent(db, 8));
+        }
+    }
+
+    private static void write(Connection db, boolean compress) throws Exception {
+        db.setAutoCommit(false);
+        try (PreparedStatement insert = db.prepareStatement(
+                "INSERT INTO notes(title, content, compressedContent, preview, isFavorite, isList, " +
+                        "dateCreated, dateModified) VALUES (?, ?, ?, ?, 0, 0, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement insertFts = db.prepareStatement(NoteDao.INSERT_FTS_QUERY)) {
+            for (int i = 0; i < NOTES; i++) {
+                byte[] compressed = compress ? NoteContentCodec.compress(contents[i]) : null;
+                insert.setString(1, "Note " + i);
+                insert.setString(2, compressed == null ? contents[i] : null);
+                insert.setBytes(3, compressed);
+                insert.setString(4, NotePreviewBuilder.build(contents[i], false));
+                insert.setLong(5, i);
+                insert.setLong(6, i);
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    insertFts.setLong(1, keys.getLong(1));
+                }
+                insertFts.setString(2, "Note " + i);
+                insertFts.setString(3, contents[i]);
+                insertFts.executeUpdate();
+            }
+            db.commit();
+        } finally {
+            db.setAutoCommit(true);
+        }
+    }
+
+    private static String readContent(Connection db, int id) throws Exception {
+        try (PreparedStatement read = db.prepareStatement(
+                "SELECT content, compressedContent FROM notes WHERE id = ?")) {
+            read.setInt(1, id);
+            try (ResultSet row = read.executeQuery()) {
+                row.next();
+                return content(row);
+            }
+        }
+    }
+
+    private static String content(ResultSet row) throws Exception {
+        byte[] compressed = row.getBytes(2);
+        return compressed != null ? NoteContentCodec.decompress(compressed) : row.getString(1);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.noteapp.database;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// The schema of AppDatabase at its current version, as Room creates it, on a plain SQLite
+// connection (sqlite-jdbc) for JVM tests of queries and storage settings.
+// Has to be kept in sync with the entities and the latest migration.
+final class TestDatabase {
+    static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS `notes` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`title` TEXT, `content` TEXT, `compressedContent` BLOB, `preview` TEXT, " +
+                    "`isFavorite` INTEGER NOT NULL, `isList` INTEGER NOT NULL, " +
+                    "`dateCreated` INTEGER, `dateModified` INTEGER)",
+            "CREATE INDEX IF NOT EXISTS `index_notes_isFavorite_dateModified` " +
+                    "ON `notes` (`isFavorite`, `dateModified`)",
+            "CREATE VIRTUAL TABLE IF NOT EXISTS `notes_fts` " +
+                    "USING FTS4(`title` TEXT, `body` TEXT, tokenize=unicode61)",
+            "CREATE TABLE IF NOT EXISTS `list_items` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`noteId` INTEGER NOT NULL, `position` INTEGER NOT NULL, " +
+                    "`text` TEXT, `isChecked` INTEGER NOT NULL, " +
+                    "FOREIGN KEY(`noteId`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )",
+            "CREATE INDEX IF NOT EXISTS `index_list_items_noteId_position` " +
+                    "ON `list_items` (`noteId`, `position`)",
+    };
+
+    private TestDatabase() {}
+
+    static Connection openInMemory() throws SQLException {
+        return create(DriverManager.getConnection("jdbc:sqlite::memory:"));
+    }
+
+    static Connection open(File file) throws SQLException {
+        return create(DriverManager.getConnection("jdbc:sqlite:" + file.getPath()));
+    }
+
+    private static Connection create(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : SCHEMA) {
+                statement.execute(sql);
+            }
+        }
+        return connection;
+    }
+}
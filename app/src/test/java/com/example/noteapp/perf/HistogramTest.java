@@ -0,0 +1,76 @@
+package com.example.noteapp.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class HistogramTest {
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (long value = 0; value < 32; value++) {
+            assertEquals(value, Histogram.bucketOf(value));
+            assertEquals(value, Histogram.highestValueIn((int) value));
+        }
+    }
+
+    // Every value falls in a bucket whose range holds it, and bucket ranges follow each other
+    @Test
+    public void bucketBoundaries() {
+        for (int shift = 5; shift < 44; shift++) {
+            long powerOfTwo = 1L << shift;
+            for (long value : new long[]{powerOfTwo - 1, powerOfTwo, powerOfTwo + 1, powerOfTwo * 3 / 2}) {
+                int bucket = Histogram.bucketOf(value);
+                assertTrue(value + " above its bucket", value <= Histogram.highestValueIn(bucket));
+                assertTrue(value + " below its bucket", value > Histogram.highestValueIn(bucket - 1));
+            }
+        }
+        for (int bucket = 1; bucket < 40 * 32; bucket++) {
+            long lowest = Histogram.highestValueIn(bucket - 1) + 1;
+            assertEquals(bucket, Histogram.bucketOf(lowest));
+            assertEquals(bucket, Histogram.bucketOf(Histogram.highestValueIn(bucket)));
+        }
+    }
+
+    @Test
+    public void hugeValuesShareTheLastBucket() {
+        assertEquals(40 * 32 - 1, Histogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(40 * 32 - 1, Histogram.bucketOf(1L << 50));
+    }
+
+    // A bucket is at most 1/32 of its values wide, so percentiles are within about 3%
+    @Test
+    public void percentilesAreWithinThreePercent() {
+        Histogram histogram = new Histogram("test");
+        Random random = new Random(1);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-uniform from 1 µs to 1 s, like bind and query times
+            values[i] = (long) Math.pow(10, 3 + 6 * random.nextDouble());
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " vs " + exact, reported <= exact * 1.032);
+        }
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    public void emptyAndNegative() {
+        Histogram histogram = new Histogram("test");
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
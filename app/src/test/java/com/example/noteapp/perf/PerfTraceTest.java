@@ -0,0 +1,189 @@
+package com.example.noteapp.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.noteapp.benchmark.Fixtures;
+import com.example.noteapp.database.ListItemJson;
+import com.example.noteapp.database.NoteContentCodec;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// Phase timings and budgets without a device: a manual clock makes durations exact, and
+// the system trace sections are off as android.os.Trace does not exist on the JVM
+public class PerfTraceTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long clockNanos;
+
+    @Before
+    public void setUp() {
+        PerfTrace.setSystemTraceEnabled(false);
+        PerfTrace.setClock(() -> clockNanos);
+        PerfTrace.reset();
+        Metrics.reset();
+        clockNanos = 1_000 * MS;
+        PerfTrace.markProcessStart();
+    }
+
+    @After
+    public void tearDown() {
+        PerfTrace.setClock(System::nanoTime);
+        PerfTrace.reset();
+    }
+
+    // The startup phases as MainActivity records them, each one taking a known time
+    @Test
+    public void startupPhasesStayWithinBudget() {
+        clockNanos += 120 * MS; // process start to Activity creation
+        long onCreate = PerfTrace.begin("MainActivity.onCreate");
+        long initViews = PerfTrace.begin("MainActivity.initViews");
+        clockNanos += 40 * MS;
+        PerfTrace.end("MainActivity.initViews", initViews);
+        long setupRecyclerView = PerfTrace.begin("MainActivity.setupRecyclerView");
+        clockNanos += 15 * MS;
+        PerfTrace.end("MainActivity.setupRecyclerView", setupRecyclerView);
+        long loadNotes = PerfTrace.beginAsync("MainActivity.loadNotes");
+        clockNanos += 5 * MS;
+        PerfTrace.end("MainActivity.onCreate", onCreate);
+        clockNanos += 60 * MS;
+        PerfTrace.markSinceProcessStart("MainActivity.firstFrame");
+        clockNanos += 30 * MS;
+        PerfTrace.endAsync("MainActivity.loadNotes", loadNotes);
+        PerfTrace.markSinceProcessStart("MainActivity.firstContent");
+
+        assertEquals(40 * MS, PerfTrace.getLastDurationNanos("MainActivity.initViews"));
+        assertEquals(15 * MS, PerfTrace.getLastDurationNanos("MainActivity.setupRecyclerView"));
+        assertEquals(60 * MS, PerfTrace.getLastDurationNanos("MainActivity.onCreate"));
+        assertEquals(95 * MS, PerfTrace.getLastDurationNanos("MainActivity.loadNotes"));
+        assertEquals(240 * MS, PerfTrace.getLastDurationNanos("MainActivity.firstFrame"));
+        assertEquals(270 * MS, PerfTrace.getLastDurationNanos("MainActivity.firstContent"));
+
+        assertWithinBudget("MainActivity.onCreate", 100);
+        assertWithinBudget("MainActivity.firstFrame", 400);
+        assertWithinBudget("MainActivity.firstContent", 500);
+    }
+
+    @Test(expected = AssertionError.class)
+    public void phaseOverBudgetFails() {
+        long start = PerfTrace.begin("MainActivity.onCreate");
+        clockNanos += 101 * MS;
+        PerfTrace.end("MainActivity.onCreate", start);
+
+        assertWithinBudget("MainActivity.onCreate", 100);
+    }
+
+    @Test(expected = AssertionError.class)
+    public void missingPhaseFails() {
+        assertWithinBudget("MainActivity.firstFrame", 400);
+    }
+
+    @Test
+    public void spansAreKeptOldestFirstAndEndUpInMetrics() {
+        for (int i = 1; i <= 3; i++) {
+            long start = PerfTrace.begin("NotesAdapter.bind");
+            clockNanos += i * MS;
+            PerfTrace.end("NotesAdapter.bind", start);
+        }
+
+        List<PerfTrace.Span> spans = PerfTrace.snapshot();
+        assertEquals(3, spans.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("NotesAdapter.bind", spans.get(i).name);
+            assertEquals((i + 1) * MS, spans.get(i).durationNanos);
+            assertEquals(Thread.currentThread().getName(), spans.get(i).thread);
+        }
+        assertEquals(3 * MS, PerfTrace.getLastDurationNanos("NotesAdapter.bind"));
+        Histogram histogram = Metrics.histogram("NotesAdapter.bind");
+        assertEquals(3, histogram.getCount());
+        assertEquals(3 * MS, histogram.getMax());
+    }
+
+    // Binds overwrite the ring buffer, the startup phases must still be readable afterwards
+    @Test
+    public void lastDurationsOutliveTheRingBuffer() {
+        long start = PerfTrace.begin("MainActivity.onCreate");
+        clockNanos += 50 * MS;
+        PerfTrace.end("MainActivity.onCreate", start);
+        for (int i = 0; i < PerfTrace.CAPACITY + 10; i++) {
+            PerfTrace.record("NotesAdapter.bind", clockNanos, clockNanos + i);
+        }
+
+        List<PerfTrace.Span> spans = PerfTrace.snapshot();
+        assertEquals(PerfTrace.CAPACITY, spans.size());
+        assertEquals(10, spans.get(0).durationNanos);
+        assertEquals(PerfTrace.CAPACITY + 9, spans.get(spans.size() - 1).durationNanos);
+        assertEquals(50 * MS, PerfTrace.getLastDurationNanos("MainActivity.onCreate"));
+    }
+
+    // Spans are recorded from several threads while snapshots are taken, every span in a
+    // snapshot has to be one that was recorded as a whole
+    @Test
+    public void snapshotsDuringConcurrentRecordingAreConsistent() throws Exception {
+        int threadCount = 4;
+        int spansPerThread = 20_000;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            String name = "Thread" + t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < spansPerThread; i++) {
+                    // The duration tells the recording thread
+                    PerfTrace.record(name, i, i + name.hashCode());
+                }
+            }, name);
+            threads[t].start();
+        }
+
+        int snapshots = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) running |= thread.isAlive();
+            for (PerfTrace.Span span : PerfTrace.snapshot()) {
+                assertEquals(span.name, span.thread);
+                assertEquals(span.name.hashCode(), span.durationNanos);
+            }
+            snapshots++;
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertTrue(snapshots > 0);
+        assertEquals(PerfTrace.CAPACITY, PerfTrace.snapshot().size());
+        assertEquals(threadCount * spansPerThread, Metrics.histogram("Thread0").getCount()
+                + Metrics.histogram("Thread1").getCount() + Metrics.histogram("Thread2").getCount()
+                + Metrics.histogram("Thread3").getCount());
+    }
+
+    @Test
+    public void neverRecordedIsNegative() {
+        assertEquals(-1, PerfTrace.getLastDurationNanos("Nothing"));
+    }
+
+    // Real work on the real clock, with budgets far above what a desktop JVM needs so only a
+    // regression by an order of magnitude fails
+    @Test
+    public void parsingAndInflatingStayWithinBudget() throws Exception {
+        PerfTrace.setClock(System::nanoTime);
+        String json = ListItemJson.ADAPTER.toJson(Fixtures.listItems(2000, 1));
+        byte[] compressed = NoteContentCodec.compress(Fixtures.text(1024 * 1024, 1));
+        // First calls load classes and run interpreted
+        ListItemJson.fromJson(json);
+        NoteContentCodec.decompress(compressed);
+
+        ListItemJson.fromJson(json);
+        NoteContentCodec.decompress(compressed);
+
+        assertWithinBudget("ListItemJson.fromJson", 50);
+        assertWithinBudget("NoteContentCodec.decompress", 100);
+    }
+
+    private static void assertWithinBudget(String phase, long budgetMs) {
+        long duration = PerfTrace.getLastDurationNanos(phase);
+        assertTrue(phase + " was not recorded", duration >= 0);
+        assertTrue(String.format("%s took %.1f ms, budget %d ms", phase, duration / 1e6, budgetMs),
+                duration <= budgetMs * MS);
+    }
+}